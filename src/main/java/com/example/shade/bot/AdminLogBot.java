@@ -37,6 +37,8 @@ public class AdminLogBot extends TelegramLongPollingBot {
     private final BonusService bonusService;
     private final TopUpService topUpService;
     private final BlockedUserRepository blockedUserRepository;
+    private final CallbackAcknowledger callbackAcknowledger;
+    private final CallbackDeduplicator callbackDeduplicator;
 
     @Value("${telegram.admin.bot.token}")
     private String botToken;
@@ -44,6 +46,9 @@ public class AdminLogBot extends TelegramLongPollingBot {
     @Value("${telegram.admin.bot.username}")
     private String botUsername;
 
+    @Value("${telegram.api.base-url:https://api.telegram.org/bot}")
+    private String apiBaseUrl;
+
     // Static list of motivational texts in Uzbek
     private static final List<String> MOTIVATIONAL_TEXTS = List.of(
             "Sizning har bir harakatingiz foydalanuvchilarga yordam beradi! Ishda davom eting! 💪",
@@ -63,11 +68,11 @@ public class AdminLogBot extends TelegramLongPollingBot {
 
     @PostConstruct
     public void init() {
+        getOptions().setBaseUrl(apiBaseUrl);
         adminTelegramMessageSender.setBot(this);
-        clearWebhook();
     }
 
-    @PostConstruct
+    @Override
     public void clearWebhook() {
         try {
             execute(new DeleteWebhook());
@@ -98,10 +103,20 @@ public class AdminLogBot extends TelegramLongPollingBot {
                 logger.warn("Received null update");
                 return;
             }
+            callbackAcknowledger.acknowledge(this, update);
             if (update.hasMessage() && update.getMessage().hasText()) {
                 handleTextMessage(update.getMessage().getText(), update.getMessage().getChatId(), update.getMessage().getMessageId());
             } else if (update.hasCallbackQuery()) {
-                handleCallbackQuery(update.getCallbackQuery().getData(), update.getCallbackQuery().getMessage().getChatId(), update.getCallbackQuery().getMessage().getMessageId());
+                // Keyed by data alone so two admins approving the same request collapse too
+                String callbackKey = "admin:" + update.getCallbackQuery().getData();
+                if (!callbackDeduplicator.tryAcquire(callbackKey)) {
+                    return;
+                }
+                try {
+                    handleCallbackQuery(update.getCallbackQuery().getData(), update.getCallbackQuery().getMessage().getChatId(), update.getCallbackQuery().getMessage().getMessageId());
+                } finally {
+                    callbackDeduplicator.release(callbackKey);
+                }
             }
         } catch (Exception e) {
             logger.error("Error processing update: {}", update, e);
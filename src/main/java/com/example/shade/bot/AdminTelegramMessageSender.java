@@ -8,14 +8,15 @@ import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.bots.AbsSender;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 @Component
 @RequiredArgsConstructor
 public class AdminTelegramMessageSender {
     private static final Logger logger = LoggerFactory.getLogger(AdminTelegramMessageSender.class);
+    private final OutboundMessageQueue outboundQueue;
     private AbsSender bot;
 
     public void setBot(AbsSender bot) {
@@ -30,12 +31,14 @@ public class AdminTelegramMessageSender {
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
         message.setText(text);
-        try {
-            bot.execute(message);
-            logger.info("Sent message to admin chatId {}: {}", chatId, text);
-        } catch (TelegramApiException e) {
-            logger.error("Failed to send message to admin chatId {}: {}", chatId, e.getMessage());
-        }
+        outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.ADMIN_LOG, true, () -> bot.execute(message))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Failed to send message to admin chatId {}: {}", chatId, causeMessage(e));
+                    } else {
+                        logger.info("Sent message to admin chatId {}: {}", chatId, text);
+                    }
+                });
     }
 
     public void sendMessage(SendMessage sendMessage, Long chatId) {
@@ -43,12 +46,14 @@ public class AdminTelegramMessageSender {
             logger.error("Bot not set for AdminTelegramMessageSender for chatId: {}", chatId);
             return;
         }
-        try {
-            bot.execute(sendMessage);
-            logger.info("Sent message with keyboard to admin chatId {}: {}", chatId, sendMessage.getText());
-        } catch (TelegramApiException e) {
-            logger.error("Failed to send message with keyboard to admin chatId {}: {}", chatId, e.getMessage());
-        }
+        outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.ADMIN_LOG, true, () -> bot.execute(sendMessage))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Failed to send message with keyboard to admin chatId {}: {}", chatId, causeMessage(e));
+                    } else {
+                        logger.info("Sent message with keyboard to admin chatId {}: {}", chatId, sendMessage.getText());
+                    }
+                });
     }
 
     public void sendScreenshotRequest(SendPhoto sendPhoto, Long chatId) {
@@ -56,11 +61,12 @@ public class AdminTelegramMessageSender {
             logger.error("Bot not set for AdminTelegramMessageSender for chatId: {}", chatId);
             return;
         }
+        // Waits for the upload: callers reuse the SendPhoto per admin and delete the file afterwards
         try {
-            bot.execute(sendPhoto);
+            outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.ADMIN_LOG, true, () -> bot.execute(sendPhoto)).join();
             logger.info("Sent screenshot request to admin chatId {}: {}", chatId, sendPhoto.getCaption());
-        } catch (TelegramApiException e) {
-            logger.error("Failed to send screenshot request to admin chatId {}: {}", chatId, e.getMessage());
+        } catch (CompletionException e) {
+            logger.error("Failed to send screenshot request to admin chatId {}: {}", chatId, causeMessage(e));
         }
     }
     public void clearBotData(Long chatId, Integer messageId) {
@@ -70,15 +76,22 @@ public class AdminTelegramMessageSender {
         }
         // Delete the specific message
         if (messageId != null) {
-            try {
-                DeleteMessage deleteMessage = new DeleteMessage();
-                deleteMessage.setChatId(chatId.toString());
-                deleteMessage.setMessageId(messageId);
-                bot.execute(deleteMessage);
-                logger.info("Deleted messageId {} for chatId {}", messageId, chatId);
-            } catch (TelegramApiException e) {
-                logger.error("Failed to delete messageId {} for chatId {}: {}", messageId, chatId, e.getMessage());
-            }
+            DeleteMessage deleteMessage = new DeleteMessage();
+            deleteMessage.setChatId(chatId.toString());
+            deleteMessage.setMessageId(messageId);
+            outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.ADMIN_LOG, false, () -> bot.execute(deleteMessage))
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            logger.error("Failed to delete messageId {} for chatId {}: {}", messageId, chatId, causeMessage(e));
+                        } else {
+                            logger.info("Deleted messageId {} for chatId {}", messageId, chatId);
+                        }
+                    });
         }
     }
+
+    private static String causeMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage();
+    }
 }
\ No newline at end of file
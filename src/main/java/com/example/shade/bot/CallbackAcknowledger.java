@@ -0,0 +1,46 @@
+package com.example.shade.bot;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+/**
+ * Answers callback queries as soon as they arrive so clients stop showing the loading spinner
+ * while the handler is still running.
+ */
+@Component
+@RequiredArgsConstructor
+public class CallbackAcknowledger {
+    private static final Logger logger = LoggerFactory.getLogger(CallbackAcknowledger.class);
+
+    private final OutboundMessageQueue outboundQueue;
+
+    @Value("${telegram.callback.ack-enabled:true}")
+    private boolean enabled;
+
+    @Value("${telegram.callback.ack-text:}")
+    private String ackText;
+
+    public void acknowledge(AbsSender bot, Update update) {
+        if (!enabled || update == null || !update.hasCallbackQuery()) {
+            return;
+        }
+        AnswerCallbackQuery answer = new AnswerCallbackQuery();
+        answer.setCallbackQueryId(update.getCallbackQuery().getId());
+        if (ackText != null && !ackText.isBlank()) {
+            answer.setText(ackText);
+        }
+        // Laneless so the answer is not held behind messages already queued for the chat
+        outboundQueue.submit(bot, null, OutboundMessageQueue.Priority.INTERACTIVE, false, () -> bot.execute(answer))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.debug("Failed to answer callback query {}: {}", answer.getCallbackQueryId(), e.getMessage());
+                    }
+                });
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.shade.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of callbacks being handled. A callback with the same key is dropped while the first one
+ * is still running and for a short debounce window after it finished.
+ */
+@Component
+public class CallbackDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(CallbackDeduplicator.class);
+
+    // A handler running longer than this is assumed lost and no longer blocks its key
+    private static final long MAX_IN_FLIGHT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    // Callbacks that move money or create requests; navigation callbacks are never dropped
+    private static final Set<String> GUARDED_CALLBACKS = Set.of(
+            "TOPUP_CONFIRM", "TOPUP_PAYMENT_CONFIRM", "BONUS_TOPUP_CONFIRM_YES", "BONUS_LOTTERY_PLAY");
+    private static final List<String> GUARDED_PREFIXES = List.of(
+            "APPROVE_WITHDRAW:", "REJECT_WITHDRAW:", "ADMIN_APPROVE_TRANSFER:", "ADMIN_DECLINE_TRANSFER:",
+            "ADMIN_REMOVE_TICKETS:", "ADMIN_REMOVE_BONUS:", "ADMIN_BLOCK_USER:",
+            "SCREENSHOT_APPROVE", "SCREENSHOT_REJECT");
+
+    @Value("${telegram.callback.debounce-ms:1500}")
+    private long debounceMs;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * True for callback data with side effects, which must not run twice for one tap.
+     */
+    public static boolean isGuarded(String data) {
+        if (data == null) {
+            return false;
+        }
+        return GUARDED_CALLBACKS.contains(data) || GUARDED_PREFIXES.stream().anyMatch(data::startsWith);
+    }
+
+    /**
+     * Returns true if the caller should handle the callback and must call {@link #release} afterwards.
+     */
+    public boolean tryAcquire(String key) {
+        long now = System.currentTimeMillis();
+        boolean[] acquired = {false};
+        entries.compute(key, (k, entry) -> {
+            if (entry != null && isBlocking(entry, now)) {
+                return entry;
+            }
+            acquired[0] = true;
+            return new Entry(now);
+        });
+        if (!acquired[0]) {
+            dropped.incrementAndGet();
+            logger.info("Dropped duplicate callback {}", key);
+        }
+        return acquired[0];
+    }
+
+    public void release(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void removeFinished() {
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> !isBlocking(e.getValue(), now));
+    }
+
+    private boolean isBlocking(Entry entry, long now) {
+        if (entry.finishedAt == 0L) {
+            return now - entry.startedAt < MAX_IN_FLIGHT_MS;
+        }
+        return now - entry.finishedAt < debounceMs;
+    }
+
+    private static class Entry {
+        private final long startedAt;
+        private volatile long finishedAt;
+
+        private Entry(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+}
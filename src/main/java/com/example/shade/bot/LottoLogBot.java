@@ -17,9 +17,9 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import jakarta.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
@@ -31,7 +31,7 @@ public class LottoLogBot extends TelegramLongPollingBot {
 
     private static final Long MINIMUM_TICKETS = 1L;
     private static final Long MAXIMUM_TICKETS = 400L;
-    private final Map<Long, String> userState = new HashMap<>();
+    private final Map<Long, String> userState = new ConcurrentHashMap<>();
 
     @Value("${telegram.logbot.token}")
     private String botToken;
@@ -39,13 +39,16 @@ public class LottoLogBot extends TelegramLongPollingBot {
     @Value("${telegram.logbot.username}")
     private String botUsername;
 
+    @Value("${telegram.api.base-url:https://api.telegram.org/bot}")
+    private String apiBaseUrl;
+
     @PostConstruct
     public void init() {
+        getOptions().setBaseUrl(apiBaseUrl);
         messageSender.setBot(this);
-        clearWebhook();
     }
 
-    @PostConstruct
+    @Override
     public void clearWebhook() {
         try {
             execute(new DeleteWebhook());
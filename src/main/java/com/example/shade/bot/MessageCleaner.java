@@ -0,0 +1,151 @@
+package com.example.shade.bot;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes old bot messages in the background. Ids are collected per chat and removed with
+ * deleteMessages in one call per chat, so cleanup never delays the next screen.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageCleaner {
+    private static final Logger logger = LoggerFactory.getLogger(MessageCleaner.class);
+
+    // Telegram only lets bots delete messages younger than 48 hours
+    private static final long DELETE_WINDOW_MS = TimeUnit.HOURS.toMillis(48) - TimeUnit.MINUTES.toMillis(5);
+
+    private final OutboundMessageQueue outboundQueue;
+
+    private final Map<Long, PendingDeletes> pending = new ConcurrentHashMap<>();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong bulkCalls = new AtomicLong();
+    private volatile boolean bulkSupported = true;
+
+    @Value("${telegram.cleanup.bulk-enabled:true}")
+    private boolean bulkEnabled;
+
+    /**
+     * Queues the messages for deletion. {@code sentAt} holds the send times captured together with
+     * the ids, since the session may have forgotten them by the time the screen is dropped.
+     */
+    public void enqueue(AbsSender bot, Long chatId, List<Integer> messageIds, Map<Integer, Long> sentAt) {
+        if (messageIds == null || messageIds.isEmpty()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - DELETE_WINDOW_MS;
+        List<Integer> deletable = new ArrayList<>(messageIds.size());
+        for (Integer messageId : messageIds) {
+            long messageSentAt = sentAt.getOrDefault(messageId, 0L);
+            // Unknown send time (restored or untracked) is still tried
+            if (messageSentAt != 0L && messageSentAt < cutoff) {
+                expired.incrementAndGet();
+            } else {
+                deletable.add(messageId);
+            }
+        }
+        if (deletable.isEmpty()) {
+            return;
+        }
+        pending.compute(chatId, (id, entry) -> {
+            PendingDeletes result = entry != null ? entry : new PendingDeletes(bot);
+            result.messageIds.addAll(deletable);
+            return result;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.cleanup.interval-ms:250}")
+    public void flush() {
+        for (Long chatId : pending.keySet()) {
+            PendingDeletes entry = pending.remove(chatId);
+            if (entry == null) {
+                continue;
+            }
+            List<Integer> messageIds = new ArrayList<>(entry.messageIds);
+            if (bulkEnabled && bulkSupported && messageIds.size() > 1) {
+                for (int start = 0; start < messageIds.size(); start += DeleteMessages.MAX_MESSAGE_IDS) {
+                    List<Integer> chunk = messageIds.subList(start, Math.min(start + DeleteMessages.MAX_MESSAGE_IDS, messageIds.size()));
+                    deleteBulk(entry.bot, chatId, new ArrayList<>(chunk));
+                }
+            } else {
+                messageIds.forEach(messageId -> deleteSingle(entry.bot, chatId, messageId));
+            }
+        }
+    }
+
+    private void deleteBulk(AbsSender bot, Long chatId, List<Integer> messageIds) {
+        DeleteMessages deleteMessages = new DeleteMessages(chatId.toString(), messageIds);
+        bulkCalls.incrementAndGet();
+        // Laneless: cleanup must not hold up the next messages of the chat
+        outboundQueue.submit(bot, null, OutboundMessageQueue.Priority.CLEANUP, false, () -> bot.execute(deleteMessages))
+                .whenComplete((result, e) -> {
+                    if (e == null) {
+                        deleted.addAndGet(messageIds.size());
+                        return;
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TelegramApiRequestException requestException
+                            && requestException.getErrorCode() != null && requestException.getErrorCode() == 404) {
+                        logger.warn("deleteMessages is not supported by the Bot API server, using single deletes");
+                        bulkSupported = false;
+                    } else {
+                        logger.debug("Bulk delete failed for chatId {}, retrying one by one: {}", chatId, cause.getMessage());
+                    }
+                    messageIds.forEach(messageId -> deleteSingle(bot, chatId, messageId));
+                });
+    }
+
+    private void deleteSingle(AbsSender bot, Long chatId, Integer messageId) {
+        DeleteMessage deleteMessage = new DeleteMessage(chatId.toString(), messageId);
+        outboundQueue.submit(bot, null, OutboundMessageQueue.Priority.CLEANUP, false, () -> bot.execute(deleteMessage))
+                .whenComplete((result, e) -> {
+                    if (e == null) {
+                        deleted.incrementAndGet();
+                        return;
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    String error = String.valueOf(cause.getMessage());
+                    if (!error.contains("message to delete not found") && !error.contains("message can't be deleted")) {
+                        logger.error("Error deleting message {} for chatId {}: {}", messageId, chatId, error);
+                    }
+                });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingChats", pending.size());
+        stats.put("deleted", deleted.get());
+        stats.put("expiredSkipped", expired.get());
+        stats.put("bulkCalls", bulkCalls.get());
+        stats.put("bulkSupported", bulkSupported);
+        return stats;
+    }
+
+    private static class PendingDeletes {
+        private final AbsSender bot;
+        private final Set<Integer> messageIds = new LinkedHashSet<>();
+
+        private PendingDeletes(AbsSender bot) {
+            this.bot = bot;
+        }
+    }
+}
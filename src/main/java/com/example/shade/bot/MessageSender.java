@@ -1,48 +1,172 @@
 package com.example.shade.bot;
 
-import com.example.shade.model.UserSession;
 import com.example.shade.service.UserSessionService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
 public class MessageSender {
     private static final Logger logger = LoggerFactory.getLogger(MessageSender.class);
     private final UserSessionService sessionService;
+    private final OutboundMessageQueue outboundQueue;
+    private final MessageCleaner messageCleaner;
     private AbsSender bot;
 
+    // Screens handed to animateAndDeleteMessages in edit-in-place mode, waiting for the next message
+    private final Map<Long, PendingScreen> pendingScreens = new ConcurrentHashMap<>();
+
+    // Sends not completed yet per chat; clearing the screen meanwhile deletes them once they arrive
+    private final Map<Long, Set<InFlightSend>> inFlightSends = new ConcurrentHashMap<>();
+
+    @Value("${telegram.ui.edit-in-place:false}")
+    private boolean editInPlace;
+
+    @Value("${telegram.ui.pending-screen-ttl-ms:3000}")
+    private long pendingScreenTtlMs;
+
     public void setBot(AbsSender bot) {
         this.bot = bot;
     }
 
-    public void sendMessage(SendMessage message, Long chatId) {
-        try {
-            message.setChatId(chatId);
-            var sentMessage = bot.execute(message);
-            UserSession session = sessionService.getUserSession(chatId).orElse(new UserSession());
-            session.setChatId(chatId);
-            List<Integer> messageIds = sessionService.getMessageIds(chatId);
-            messageIds.add(sentMessage.getMessageId());
-            session.setMessageIds(messageIds);
-            sessionService.saveUserSession(session);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending message to chatId {}: {}", chatId, e.getMessage());
+    public CompletableFuture<Integer> sendMessage(SendMessage message, Long chatId) {
+        return sendMessage(message, chatId, OutboundMessageQueue.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Queues the message and completes with its message id once sent, or with null if sending failed.
+     */
+    public CompletableFuture<Integer> sendMessage(SendMessage message, Long chatId, OutboundMessageQueue.Priority priority) {
+        message.setChatId(chatId);
+        InFlightSend send = startSend(chatId);
+        PendingScreen pending = priority == OutboundMessageQueue.Priority.INTERACTIVE ? pendingScreens.remove(chatId) : null;
+        if (pending != null) {
+            ReplyKeyboard markup = message.getReplyMarkup();
+            if (markup == null || markup instanceof InlineKeyboardMarkup) {
+                return replaceScreen(message, chatId, pending, send);
+            }
+            // Reply keyboards can't be attached by an edit, so the old screen goes away as before
+            deleteMessages(chatId, pending.messageIds, pending.sentAt);
+        }
+        return outboundQueue.submit(bot, chatId, priority, true, () -> bot.execute(message).getMessageId())
+                .handle((messageId, e) -> trackSent(chatId, send, messageId, e, 0L));
+    }
+
+    /**
+     * Edits the most recent message of the previous screen into the new one and deletes the rest.
+     * Falls back to sending a new message when the old one can no longer be edited.
+     */
+    private CompletableFuture<Integer> replaceScreen(SendMessage message, Long chatId, PendingScreen previous, InFlightSend send) {
+        List<Integer> previousIds = previous.messageIds;
+        Integer targetId = previousIds.get(previousIds.size() - 1);
+        deleteMessages(chatId, previousIds.subList(0, previousIds.size() - 1), previous.sentAt);
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId.toString());
+        edit.setMessageId(targetId);
+        edit.setText(message.getText());
+        edit.setParseMode(message.getParseMode());
+        edit.setEntities(message.getEntities());
+        edit.setDisableWebPagePreview(message.getDisableWebPagePreview());
+        edit.setReplyMarkup((InlineKeyboardMarkup) message.getReplyMarkup());
+        return outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.INTERACTIVE, false, () -> {
+            try {
+                bot.execute(edit);
+                return targetId;
+            } catch (TelegramApiRequestException e) {
+                if (String.valueOf(e.getApiResponse()).contains("message is not modified")) {
+                    return targetId;
+                }
+                logger.debug("Cannot edit message {} in chat {}, sending a new one: {}", targetId, chatId, e.getApiResponse());
+                Integer messageId = bot.execute(message).getMessageId();
+                try {
+                    bot.execute(new DeleteMessage(chatId.toString(), targetId));
+                } catch (TelegramApiException deleteError) {
+                    logger.debug("Could not delete replaced message {} in chat {}", targetId, chatId);
+                }
+                return messageId;
+            }
+        }).handle((messageId, e) -> {
+            // An edited message keeps its original send time for the 48 hour delete limit
+            long sentAt = targetId.equals(messageId) ? previous.sentAt.getOrDefault(targetId, 0L) : 0L;
+            return trackSent(chatId, send, messageId, e, sentAt);
+        });
+    }
+
+    private Integer trackSent(Long chatId, InFlightSend send, Integer messageId, Throwable e, long sentAt) {
+        long sentTime = sentAt != 0L ? sentAt : System.currentTimeMillis();
+        boolean orphaned;
+        synchronized (send) {
+            finishSend(chatId, send);
+            orphaned = send.orphaned;
+            if (e == null && !orphaned && !sessionService.getMessageIds(chatId).contains(messageId)) {
+                sessionService.addMessageId(chatId, messageId, sentTime);
+            }
+        }
+        if (e != null) {
+            logger.error("Error sending message to chatId {}: {}", chatId, causeMessage(e));
+            return null;
+        }
+        if (orphaned) {
+            // The screen this message belonged to was cleared while it was being sent
+            deleteMessages(chatId, List.of(messageId), Map.of(messageId, sentTime));
+        }
+        return messageId;
+    }
+
+    private InFlightSend startSend(Long chatId) {
+        InFlightSend send = new InFlightSend();
+        inFlightSends.compute(chatId, (id, sends) -> {
+            Set<InFlightSend> result = sends != null ? sends : new HashSet<>();
+            result.add(send);
+            return result;
+        });
+        return send;
+    }
+
+    private void finishSend(Long chatId, InFlightSend send) {
+        inFlightSends.computeIfPresent(chatId, (id, sends) -> {
+            sends.remove(send);
+            return sends.isEmpty() ? null : sends;
+        });
+    }
+
+    private void orphanInFlightSends(Long chatId) {
+        Set<InFlightSend> sends = inFlightSends.remove(chatId);
+        if (sends == null) {
+            return;
+        }
+        for (InFlightSend send : sends) {
+            synchronized (send) {
+                send.orphaned = true;
+            }
         }
     }
 
@@ -74,25 +198,77 @@ public class MessageSender {
         editMessage.setChatId(chatId.toString());
         editMessage.setMessageId(messageId);
         editMessage.setReplyMarkup(null); // Remove keyboard
-        try {
-            bot.execute(editMessage);
-            logger.info("Removed buttons from message {} in chat {}", messageId, chatId);
-        } catch (TelegramApiException e) {
-            logger.error("Failed to remove buttons from message {} in chat {}: {}", messageId, chatId, e.getMessage());
-        }
+        outboundQueue.submit(bot, chatId, OutboundMessageQueue.Priority.INTERACTIVE, false, () -> bot.execute(editMessage))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Failed to remove buttons from message {} in chat {}: {}", messageId, chatId, causeMessage(e));
+                    } else {
+                        logger.info("Removed buttons from message {} in chat {}", messageId, chatId);
+                    }
+                });
     }
     public void animateAndDeleteMessages(Long chatId, List<Integer> messageIds, String animationType) {
+        // Messages still being sent are not in messageIds yet and would outlive the cleared screen
+        orphanInFlightSends(chatId);
         if (messageIds == null || messageIds.isEmpty()) {
             return;
         }
-        for (Integer messageId : messageIds) {
-            try {
-                bot.execute(new DeleteMessage(String.valueOf(chatId), messageId));
-            } catch (TelegramApiException e) {
-                if (!e.getMessage().contains("message to delete not found")) {
-                    logger.error("Error deleting message {} for chatId {}: {}", messageId, chatId, e.getMessage());
-                }
+        // Send times are read now: callers clear the session's message ids right after this call
+        Map<Integer, Long> sentAt = sentTimes(chatId, messageIds);
+        if (!editInPlace) {
+            deleteMessages(chatId, messageIds, sentAt);
+            return;
+        }
+        // Keep the screen until the next message decides whether it can be edited in place
+        PendingScreen previous = pendingScreens.put(chatId, new PendingScreen(new ArrayList<>(messageIds), sentAt, System.currentTimeMillis()));
+        if (previous != null) {
+            List<Integer> stale = new ArrayList<>(previous.messageIds);
+            stale.removeAll(messageIds);
+            deleteMessages(chatId, stale, previous.sentAt);
+        }
+    }
+
+    /**
+     * Deletes a screen that was kept for editing but not replaced by the end of the update.
+     */
+    public void flushPendingScreen(Long chatId) {
+        PendingScreen pending = pendingScreens.remove(chatId);
+        if (pending != null) {
+            deleteMessages(chatId, pending.messageIds, pending.sentAt);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.ui.pending-screen-ttl-ms:3000}")
+    public void flushExpiredScreens() {
+        long cutoff = System.currentTimeMillis() - pendingScreenTtlMs;
+        pendingScreens.forEach((chatId, pending) -> {
+            if (pending.createdAt < cutoff && pendingScreens.remove(chatId, pending)) {
+                deleteMessages(chatId, pending.messageIds, pending.sentAt);
             }
+        });
+    }
+
+    private void deleteMessages(Long chatId, List<Integer> messageIds, Map<Integer, Long> sentAt) {
+        messageCleaner.enqueue(bot, chatId, messageIds, sentAt);
+    }
+
+    private Map<Integer, Long> sentTimes(Long chatId, List<Integer> messageIds) {
+        Map<Integer, Long> sentAt = new HashMap<>();
+        for (Integer messageId : messageIds) {
+            sentAt.put(messageId, sessionService.getMessageSentAt(chatId, messageId));
         }
+        return sentAt;
+    }
+
+    private static final class InFlightSend {
+        private boolean orphaned;
+    }
+
+    private record PendingScreen(List<Integer> messageIds, Map<Integer, Long> sentAt, long createdAt) {
+    }
+
+    private static String causeMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return String.valueOf(cause.getMessage());
     }
 }
\ No newline at end of file
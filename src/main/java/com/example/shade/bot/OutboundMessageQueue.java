@@ -0,0 +1,343 @@
+package com.example.shade.bot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single outbound pipeline for Bot API calls. Calls for the same bot and chat are sent in order,
+ * paced per chat, and all calls of a bot share a global token bucket. Ready calls are taken by
+ * priority so interactive replies overtake admin logs and broadcasts.
+ */
+@Component
+public class OutboundMessageQueue {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMessageQueue.class);
+
+    public enum Priority {
+        INTERACTIVE, ADMIN_LOG, CLEANUP, BROADCAST
+    }
+
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
+
+    @Value("${telegram.outbound.workers:8}")
+    private int workerCount;
+
+    @Value("${telegram.outbound.global-rate-per-second:30}")
+    private int globalRatePerSecond;
+
+    @Value("${telegram.outbound.chat-rate-per-second:1}")
+    private double chatRatePerSecond;
+
+    @Value("${telegram.outbound.chat-burst:3}")
+    private int chatBurst;
+
+    @Value("${telegram.outbound.max-retries:3}")
+    private int maxRetries;
+
+    private final PriorityBlockingQueue<Task<?>> readyQueue = new PriorityBlockingQueue<>();
+    private final Map<LaneKey, Lane> lanes = new ConcurrentHashMap<>();
+    private final Map<AbsSender, TokenBucket> globalBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final PriorityMetrics[] metrics = new PriorityMetrics[Priority.values().length];
+    private ScheduledExecutorService delayScheduler;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        for (Priority priority : Priority.values()) {
+            metrics[priority.ordinal()] = new PriorityMetrics();
+        }
+        delayScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbound-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        delayScheduler.scheduleWithFixedDelay(this::removeIdleLanes, 1, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::workLoop, "outbound-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        logger.info("Outbound queue started with {} workers, {} msg/s per bot, {} msg/s per chat",
+                workerCount, globalRatePerSecond, chatRatePerSecond);
+    }
+
+    /**
+     * Queues a Bot API call. Paced calls (new messages) count against the per-chat limit,
+     * edits and deletes only against the global one. A null chatId skips per-chat ordering.
+     */
+    public <T> CompletableFuture<T> submit(AbsSender bot, Long chatId, Priority priority, boolean paced, TelegramCall<T> call) {
+        Task<T> task = new Task<>(bot, chatId, priority, paced, call, sequence.incrementAndGet());
+        queued.incrementAndGet();
+        metrics[priority.ordinal()].submitted.incrementAndGet();
+        if (chatId == null) {
+            readyQueue.offer(task);
+            return task.future;
+        }
+        LaneKey key = new LaneKey(bot, chatId);
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(key, k -> new Lane());
+            synchronized (lane) {
+                if (lane.closed) {
+                    continue;
+                }
+                lane.lastUsed = System.currentTimeMillis();
+                task.lane = lane;
+                if (lane.busy) {
+                    lane.pending.add(task);
+                } else {
+                    lane.busy = true;
+                    readyQueue.offer(task);
+                }
+                return task.future;
+            }
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            Task<?> task;
+            try {
+                task = readyQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (task.notBefore > now) {
+                delay(task, task.notBefore - now);
+                continue;
+            }
+            if (task.paced && task.lane != null) {
+                long wait;
+                synchronized (task.lane) {
+                    wait = task.lane.bucket(chatBurst, chatRatePerSecond).tryAcquire(now);
+                }
+                if (wait > 0) {
+                    delay(task, wait);
+                    continue;
+                }
+            }
+            try {
+                globalBuckets.computeIfAbsent(task.bot, bot -> new TokenBucket(globalRatePerSecond, globalRatePerSecond)).acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            execute(task);
+        }
+    }
+
+    private <T> void execute(Task<T> task) {
+        PriorityMetrics priorityMetrics = metrics[task.priority.ordinal()];
+        try {
+            T result = task.call.execute();
+            priorityMetrics.recordSent(System.nanoTime() - task.enqueuedAt);
+            finish(task);
+            task.future.complete(result);
+        } catch (TelegramApiRequestException e) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            if (e.getErrorCode() != null && e.getErrorCode() == 429 && task.attempts < maxRetries) {
+                task.attempts++;
+                priorityMetrics.rateLimited.incrementAndGet();
+                long delayMillis = TimeUnit.SECONDS.toMillis(retryAfter != null ? retryAfter : 1);
+                logger.warn("Rate limited for chatId {}, retrying in {} ms (attempt {})", task.chatId, delayMillis, task.attempts);
+                task.notBefore = System.currentTimeMillis() + delayMillis;
+                delay(task, delayMillis);
+                return;
+            }
+            priorityMetrics.failed.incrementAndGet();
+            finish(task);
+            task.future.completeExceptionally(e);
+        } catch (Exception e) {
+            priorityMetrics.failed.incrementAndGet();
+            finish(task);
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private void finish(Task<?> task) {
+        queued.decrementAndGet();
+        Lane lane = task.lane;
+        if (lane == null) {
+            return;
+        }
+        synchronized (lane) {
+            Task<?> next = lane.pending.poll();
+            if (next == null) {
+                lane.busy = false;
+            } else {
+                readyQueue.offer(next);
+            }
+        }
+    }
+
+    private void delay(Task<?> task, long delayMillis) {
+        delayScheduler.schedule(() -> readyQueue.offer(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void removeIdleLanes() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+        lanes.forEach((key, lane) -> {
+            synchronized (lane) {
+                if (!lane.busy && lane.lastUsed < cutoff) {
+                    lane.closed = true;
+                    lanes.remove(key, lane);
+                }
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued.get());
+        stats.put("ready", readyQueue.size());
+        stats.put("lanes", lanes.size());
+        for (Priority priority : Priority.values()) {
+            stats.put(priority.name().toLowerCase(), metrics[priority.ordinal()].snapshot());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        if (delayScheduler != null) {
+            delayScheduler.shutdownNow();
+        }
+    }
+
+    private record LaneKey(AbsSender bot, Long chatId) {
+    }
+
+    private static class Lane {
+        private final ArrayDeque<Task<?>> pending = new ArrayDeque<>();
+        private boolean busy;
+        private boolean closed;
+        private long lastUsed;
+        private TokenBucket bucket;
+
+        private TokenBucket bucket(int burst, double ratePerSecond) {
+            if (bucket == null) {
+                bucket = new TokenBucket(burst, ratePerSecond);
+            }
+            return bucket;
+        }
+    }
+
+    private static class Task<T> implements Comparable<Task<?>> {
+        private final AbsSender bot;
+        private final Long chatId;
+        private final Priority priority;
+        private final boolean paced;
+        private final TelegramCall<T> call;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private Lane lane;
+        private volatile long notBefore;
+        private int attempts;
+
+        private Task(AbsSender bot, Long chatId, Priority priority, boolean paced, TelegramCall<T> call, long sequence) {
+            this.bot = bot;
+            this.chatId = chatId;
+            this.priority = priority;
+            this.paced = paced;
+            this.call = call;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class TokenBucket {
+        private final double capacity;
+        private final double refillPerMilli;
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+
+        private TokenBucket(double capacity, double ratePerSecond) {
+            this.capacity = capacity;
+            this.refillPerMilli = ratePerSecond / 1000.0;
+            this.tokens = capacity;
+        }
+
+        /**
+         * Takes a token if one is available, otherwise returns how long to wait for the next one.
+         */
+        private synchronized long tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / refillPerMilli);
+        }
+
+        private void acquire() throws InterruptedException {
+            long wait;
+            while ((wait = tryAcquire(System.currentTimeMillis())) > 0) {
+                Thread.sleep(wait);
+            }
+        }
+    }
+
+    private static class PriorityMetrics {
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private final AtomicLong totalLatencyNanos = new AtomicLong();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        private void recordSent(long latencyNanos) {
+            sent.incrementAndGet();
+            totalLatencyNanos.addAndGet(latencyNanos);
+            maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+        }
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long sentCount = sent.get();
+            snapshot.put("submitted", submitted.get());
+            snapshot.put("sent", sentCount);
+            snapshot.put("failed", failed.get());
+            snapshot.put("rateLimited", rateLimited.get());
+            snapshot.put("avgLatencyMs", sentCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / sentCount));
+            snapshot.put("maxLatencyMs", TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+            return snapshot;
+        }
+    }
+}
@@ -50,6 +50,9 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
     private final FeatureService featureService;
     private final LanguageSessionService languageSessionService;
     private final UserRepository userRepository;
+    private final UpdateDispatcher updateDispatcher;
+    private final CallbackAcknowledger callbackAcknowledger;
+    private final CallbackDeduplicator callbackDeduplicator;
 
     @Value("${telegram.bot.token}")
     private String botToken;
@@ -57,13 +60,16 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
     @Value("${telegram.bot.username}")
     private String botUsername;
 
+    @Value("${telegram.api.base-url:https://api.telegram.org/bot}")
+    private String apiBaseUrl;
+
     @PostConstruct
     public void init() {
+        getOptions().setBaseUrl(apiBaseUrl);
         messageSender.setBot(this);
-        clearWebhook();
     }
 
-    @PostConstruct
+    @Override
     public void clearWebhook() {
         try {
             execute(new DeleteWebhook());
@@ -89,23 +95,35 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
-        try {
-            if (update == null) {
-                logger.warn("Received null update");
-                return;
-            }
-            Long chatId = null;
-            if (update.hasMessage()) {
-                chatId = update.getMessage().getChatId();
-            } else if (update.hasCallbackQuery()) {
-                chatId = update.getCallbackQuery().getMessage().getChatId();
-            } else if (update.hasMyChatMember()) {
-                chatId = update.getMyChatMember().getChat().getId();
-            }
-            if (chatId == null) {
-                logger.warn("No chatId found in update: {}", update);
-                return;
+        if (update == null) {
+            logger.warn("Received null update");
+            return;
+        }
+        Long chatId = UpdateDispatcher.resolveChatId(update);
+        if (chatId == null) {
+            logger.warn("No chatId found in update: {}", update);
+            return;
+        }
+        callbackAcknowledger.acknowledge(this, update);
+        if (!update.hasCallbackQuery() || !CallbackDeduplicator.isGuarded(update.getCallbackQuery().getData())) {
+            updateDispatcher.dispatch(chatId, () -> handleUpdate(update, chatId));
+            return;
+        }
+        String callbackKey = chatId + ":" + update.getCallbackQuery().getData();
+        if (!callbackDeduplicator.tryAcquire(callbackKey)) {
+            return;
+        }
+        updateDispatcher.dispatch(chatId, () -> {
+            try {
+                handleUpdate(update, chatId);
+            } finally {
+                callbackDeduplicator.release(callbackKey);
             }
+        });
+    }
+
+    private void handleUpdate(Update update, Long chatId) {
+        try {
 
             // Handle referral for /start ref_
             if (update.hasMessage() && update.getMessage().hasText() && update.getMessage().getText().startsWith("/start ref_")) {
@@ -141,11 +159,11 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
                 User userLanguage = userRepository.findByChatId(chatId).orElse(null);
                 if (userLanguage == null) {
                     if (update.hasMessage() && update.getMessage().hasText() && update.getMessage().getText().equals("/start")) {
-                        sessionService.setUserState(chatId, "AWAITING_LANGUAGE");
+                        sessionService.setUserState(chatId, SessionState.AWAITING_LANGUAGE);
                         sendLanguageSelection(chatId);
                         return;
                     }
-                    if (update.hasCallbackQuery() && sessionService.getUserState(chatId).equals("AWAITING_LANGUAGE")) {
+                    if (update.hasCallbackQuery() && sessionService.getUserState(chatId) == SessionState.AWAITING_LANGUAGE) {
                         handleLanguageSelection(update.getCallbackQuery().getData(), chatId);
                         return;
                     }
@@ -185,7 +203,7 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
                     user = BlockedUser.builder().chatId(chatId).build();
                     blockedUserRepository.save(user);
                 }
-                sessionService.setUserState(chatId, "AWAITING_PHONE_NUMBER");
+                sessionService.setUserState(chatId, SessionState.AWAITING_PHONE_NUMBER);
                 sendPhoneNumberRequest(chatId);
                 return;
             }
@@ -194,8 +212,8 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             if (update.hasMessage() && update.getMessage().hasText()) {
                 handleTextMessage(update.getMessage().getText(), chatId);
             } else if (update.hasMessage() && update.getMessage().hasPhoto()) {
-                String state = sessionService.getUserState(chatId);
-                if (!"TOPUP_AWAITING_SCREENSHOT".equals(state)) {
+                SessionState state = sessionService.getUserState(chatId);
+                if (state != SessionState.TOPUP_AWAITING_SCREENSHOT) {
                     logger.warn("Photo received in wrong state for chatId {}: {}", chatId, state);
                     messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "message.please_confirm_payment_transaction"));
                     return;
@@ -251,6 +269,8 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             }
         } catch (Exception e) {
             logger.error("Error processing update: {}", update, e);
+        } finally {
+            messageSender.flushPendingScreen(chatId);
         }
     }
 
@@ -290,8 +310,8 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
 
     private void handleTextMessage(String messageText, Long chatId) {
         logger.info("Processing message from chatId {}: {}", chatId, messageText);
-        String state = sessionService.getUserState(chatId);
-        if ("AWAITING_PHONE_NUMBER".equals(state)) {
+        SessionState state = sessionService.getUserState(chatId);
+        if (state == SessionState.AWAITING_PHONE_NUMBER) {
             if (messageText.equals("🏠 Asosiy menyu")) {
                 BlockedUser user = blockedUserRepository.findById(chatId).orElse(null);
                 if (user != null && user.getPhoneNumber() != null && !"BLOCKED".equals(user.getPhoneNumber())) {
@@ -330,11 +350,11 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
             }
             messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "OPEN");
             bonusService.startBonus(chatId);
-        } else if (state != null && state.startsWith("TOPUP_")) {
+        } else if (state != null && state.getFlow() == SessionState.Flow.TOPUP) {
             topUpService.handleTextInput(chatId, messageText);
-        } else if (state != null && state.startsWith("WITHDRAW_")) {
+        } else if (state != null && state.getFlow() == SessionState.Flow.WITHDRAW) {
             withdrawService.handleTextInput(chatId, messageText);
-        } else if (state != null && state.startsWith("BONUS_")) {
+        } else if (state != null && state.getFlow() == SessionState.Flow.BONUS) {
             bonusService.handleTextInput(chatId, messageText);
         } else {
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "message.invalid_command"));
@@ -377,18 +397,25 @@ public class ShadePaymentBot extends TelegramLongPollingBot {
                 case "HOME" -> sendMainMenu(chatId, true);
                 case "BACK" -> {
                     messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "BACK");
-                    String state = sessionService.getUserState(chatId);
-                    if (state != null && state.startsWith("TOPUP_")) {
+                    SessionState state = sessionService.getUserState(chatId);
+                    if (state != null && state.getFlow() == SessionState.Flow.TOPUP) {
                         topUpService.handleBack(chatId);
-                    } else if (state != null && state.startsWith("WITHDRAW_")) {
+                    } else if (state != null && state.getFlow() == SessionState.Flow.WITHDRAW) {
                         withdrawService.handleBack(chatId);
-                    } else if (state != null && state.startsWith("BONUS_")) {
+                    } else if (state != null && state.getFlow() == SessionState.Flow.BONUS) {
                         bonusService.handleBack(chatId);
                     } else {
                         sendMainMenu(chatId, true);
                     }
                 }
                 default -> {
+                    if (sessionService.getUserState(chatId) == null
+                            && (callback.startsWith("TOPUP_") || callback.startsWith("WITHDRAW_") || callback.startsWith("BONUS_"))) {
+                        // Session expired or was evicted, the flow data behind this button is gone
+                        logger.info("No session for chatId {} on callback {}, returning to main menu", chatId, callback);
+                        sendMainMenu(chatId, true);
+                        return;
+                    }
                     if (callback.startsWith("TOPUP_")) {
                         if (!featureService.canPerformTopUp()) {
                             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "message.feature_unavailable"));
@@ -0,0 +1,133 @@
+package com.example.shade.bot;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs update handlers on a bounded worker pool. Tasks for the same chat are executed
+ * one after another in arrival order, tasks for different chats run in parallel.
+ */
+@Component
+public class UpdateDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+
+    public UpdateDispatcher(@Value("${telegram.dispatcher.pool-size:16}") int poolSize,
+                            @Value("${telegram.dispatcher.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "update-worker-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        logger.info("Update dispatcher started with {} workers and queue capacity {}", poolSize, queueCapacity);
+    }
+
+    public static Long resolveChatId(Update update) {
+        if (update == null) {
+            return null;
+        }
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        } else if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        } else if (update.hasMyChatMember()) {
+            return update.getMyChatMember().getChat().getId();
+        }
+        return null;
+    }
+
+    public void dispatch(Long chatId, Runnable task) {
+        ChatLane lane;
+        boolean schedule;
+        while (true) {
+            lane = lanes.computeIfAbsent(chatId, id -> new ChatLane());
+            synchronized (lane) {
+                if (lane.closed) {
+                    continue;
+                }
+                lane.tasks.add(task);
+                schedule = !lane.running;
+                lane.running = true;
+                break;
+            }
+        }
+        if (schedule) {
+            ChatLane scheduledLane = lane;
+            try {
+                executor.execute(() -> drain(chatId, scheduledLane));
+            } catch (RejectedExecutionException e) {
+                // Worker queue is full: process the lane on the caller thread so the
+                // polling thread slows down instead of dropping updates.
+                logger.warn("Update queue is full, processing chatId {} on caller thread", chatId);
+                drain(chatId, scheduledLane);
+            }
+        }
+    }
+
+    private void drain(Long chatId, ChatLane lane) {
+        while (true) {
+            Runnable task;
+            synchronized (lane) {
+                task = lane.tasks.poll();
+                if (task == null) {
+                    lane.running = false;
+                    lane.closed = true;
+                    lanes.remove(chatId, lane);
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Error processing update for chatId {}: {}", chatId, e.getMessage(), e);
+            }
+        }
+    }
+
+    public int getActiveChats() {
+        return lanes.size();
+    }
+
+    public int getQueuedLanes() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class ChatLane {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean running;
+        private boolean closed;
+    }
+}
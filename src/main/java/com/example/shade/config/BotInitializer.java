@@ -5,8 +5,11 @@ import com.example.shade.bot.LottoLogBot;
 import com.example.shade.bot.ShadePaymentBot;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
@@ -18,6 +21,8 @@ import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 @Configuration
 public class BotInitializer {
 
+    public static final String WEBHOOK_PATH = "/telegram/webhook/";
+
     @Autowired
     private ShadePaymentBot shadePaymentBot;
 
@@ -28,9 +33,26 @@ public class BotInitializer {
     @Autowired
     private LottoLogBot lottoLogBot;
 
+    @Value("${telegram.ingestion.mode:polling}")
+    private String ingestionMode;
+
+    @Value("${telegram.webhook.base-url:}")
+    private String webhookBaseUrl;
+
+    @Value("${telegram.webhook.secret-token:}")
+    private String webhookSecretToken;
 
     @PostConstruct
     public void init() {
+        if ("webhook".equalsIgnoreCase(ingestionMode)) {
+            if (webhookSecretToken == null || webhookSecretToken.isBlank()) {
+                throw new IllegalStateException("telegram.webhook.secret-token must be set in webhook mode");
+            }
+            registerWebhook(adminLogBot, "admin");
+            registerWebhook(shadePaymentBot, "payment");
+            registerWebhook(lottoLogBot, "lotto");
+            return;
+        }
         try {
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
             botsApi.registerBot(adminLogBot); // ✅ Register second bot here
@@ -41,4 +63,21 @@ public class BotInitializer {
             System.out.println("❌ Failed to register bots: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void registerWebhook(DefaultAbsSender bot, String botKey) {
+        if (webhookBaseUrl == null || webhookBaseUrl.isBlank()) {
+            throw new IllegalStateException("telegram.webhook.base-url must be set in webhook mode");
+        }
+        String baseUrl = webhookBaseUrl.endsWith("/") ? webhookBaseUrl.substring(0, webhookBaseUrl.length() - 1) : webhookBaseUrl;
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(baseUrl + WEBHOOK_PATH + botKey)
+                .secretToken(webhookSecretToken)
+                .build();
+        try {
+            bot.execute(setWebhook);
+            System.out.println("✅ Webhook registered for " + botKey + " bot");
+        } catch (TelegramApiException e) {
+            System.out.println("❌ Failed to register webhook for " + botKey + " bot: " + e.getMessage());
+        }
+    }
+}
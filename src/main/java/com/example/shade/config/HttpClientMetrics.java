@@ -0,0 +1,94 @@
+package com.example.shade.config;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-host call counts, errors and latency of outbound HTTP calls, plus the state of the shared
+ * connection pool. A route with pending leases is saturated.
+ */
+public class HttpClientMetrics implements ClientHttpRequestInterceptor {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Map<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+    public HttpClientMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            failed = response.getStatusCode().is5xxServerError();
+            return response;
+        } finally {
+            record(request.getURI().getHost(), System.nanoTime() - start, failed);
+        }
+    }
+
+    public void record(String host, long latencyNanos, boolean failed) {
+        HostMetrics metrics = hosts.computeIfAbsent(host != null ? host : "unknown", h -> new HostMetrics());
+        metrics.calls.incrementAndGet();
+        if (failed) {
+            metrics.errors.incrementAndGet();
+        }
+        metrics.totalLatencyNanos.addAndGet(latencyNanos);
+        metrics.maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pool", poolStats(connectionManager.getTotalStats()));
+        Map<String, Object> routes = new TreeMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), poolStats(connectionManager.getStats(route)));
+        }
+        stats.put("routes", routes);
+        Map<String, Object> calls = new TreeMap<>();
+        hosts.forEach((host, metrics) -> calls.put(host, metrics.snapshot()));
+        stats.put("hosts", calls);
+        return stats;
+    }
+
+    private Map<String, Object> poolStats(PoolStats poolStats) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leased", poolStats.getLeased());
+        stats.put("pending", poolStats.getPending());
+        stats.put("available", poolStats.getAvailable());
+        stats.put("max", poolStats.getMax());
+        return stats;
+    }
+
+    private static class HostMetrics {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalLatencyNanos = new AtomicLong();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long count = calls.get();
+            snapshot.put("calls", count);
+            snapshot.put("errors", errors.get());
+            snapshot.put("avgLatencyMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / count));
+            snapshot.put("maxLatencyMs", TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+            return snapshot;
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package com.example.shade.config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -23,7 +24,11 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowCredentials(false); // Must be false when using "*"
     }
     @Bean
-    public TaskScheduler taskScheduler() {
-        return new ConcurrentTaskScheduler();
+    public TaskScheduler taskScheduler(@Value("${scheduler.pool-size:4}") int poolSize) {
+        // Shared by @Scheduled jobs (session flush and sweep) and broadcasts
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduler-");
+        return scheduler;
     }
 }
\ No newline at end of file
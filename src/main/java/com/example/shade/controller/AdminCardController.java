@@ -4,6 +4,8 @@ import com.example.shade.model.AdminCard;
 import com.example.shade.model.OsonConfig;
 import com.example.shade.repository.AdminCardRepository;
 import com.example.shade.repository.OsonConfigRepository;
+import com.example.shade.service.AdminCardAllocator;
+import com.example.shade.service.OsonService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,8 @@ public class AdminCardController {
     private static final Logger logger = LoggerFactory.getLogger(AdminCardController.class);
     private final AdminCardRepository adminCardRepository;
     private final OsonConfigRepository osonConfigRepository;
+    private final OsonService osonService;
+    private final AdminCardAllocator adminCardAllocator;
 
     private boolean authenticate(HttpServletRequest request) {
         String authHeader = request.getHeader("Authorization");
@@ -105,6 +109,8 @@ public class AdminCardController {
                     card.setOsonConfig(osonConfig);
                     logger.info("Adding new admin card for OsonConfig ID: {}: {}", osonConfigId, card.getCardNumber());
                     AdminCard savedCard = adminCardRepository.save(card);
+                    osonService.invalidateCardIds(osonConfigId);
+                    adminCardAllocator.invalidate();
                     return ResponseEntity.ok(savedCard);
                 })
                 .orElseGet(() -> {
@@ -125,16 +131,24 @@ public class AdminCardController {
         }
         return adminCardRepository.findById(id)
                 .map(existing -> {
+                    Long previousConfigId = existing.getOsonConfig().getId();
                     existing.setCardNumber(card.getCardNumber().replaceAll("\\s+", ""));
                     existing.setOwnerName(card.getOwnerName());
                     existing.setLastUsed(card.getLastUsed());
                     existing.setBalance(card.getBalance());
+                    existing.setWeight(card.getWeight());
+                    existing.setMaxConcurrent(card.getMaxConcurrent());
+                    existing.setBalanceLimit(card.getBalanceLimit());
                     if (card.getOsonConfig() != null && card.getOsonConfig().getId() != null) {
                         osonConfigRepository.findById(card.getOsonConfig().getId())
                                 .ifPresent(existing::setOsonConfig);
                     }
                     logger.info("Updating card ID: {}, new card number: {}", id, card.getCardNumber());
-                    return ResponseEntity.ok(adminCardRepository.save(existing));
+                    AdminCard savedCard = adminCardRepository.save(existing);
+                    osonService.invalidateCardIds(previousConfigId);
+                    osonService.invalidateCardIds(savedCard.getOsonConfig().getId());
+                    adminCardAllocator.invalidate();
+                    return ResponseEntity.ok(savedCard);
                 })
                 .orElseGet(() -> {
                     logger.warn("Card not found for update, ID: {}", id);
@@ -159,6 +173,8 @@ public class AdminCardController {
                         }
                     }
                     adminCardRepository.deleteById(id);
+                    osonService.invalidateCardIds(card.getOsonConfig().getId());
+                    adminCardAllocator.invalidate();
                     logger.info("Deleted card ID: {}", id);
                     return ResponseEntity.ok(Map.of("success", true, "message", "Card deleted"));
                 })
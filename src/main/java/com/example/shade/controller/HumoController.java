@@ -2,14 +2,14 @@ package com.example.shade.controller;
 
 import com.example.shade.service.HumoService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.Base64;
 
 /**
@@ -38,16 +38,16 @@ public class HumoController {
     }
 
     @RequestMapping("/**")
-    public ResponseEntity<Object> receiver(HttpServletRequest request) {
+    public void receiver(HttpServletRequest request, HttpServletResponse response) throws IOException {
         if (!authenticate(request)) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
         }
         String path = request.getRequestURI().substring(request.getContextPath().length() + "/api/humo".length());
         String queryString = request.getQueryString();
         if (queryString != null && !queryString.isEmpty()) {
             path += "?" + queryString;
         }
-        HttpMethod method = HttpMethod.valueOf(request.getMethod());
-        return humoService.forwardRequest(path, method, request);
+        humoService.forwardRequest(path, request, response);
     }
 }
@@ -0,0 +1,51 @@
+package com.example.shade.controller;
+
+import com.example.shade.dto.HumoTransaction;
+import com.example.shade.service.HumoTransactionIndex;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives incoming transactions from the local Humo agent as they happen. An empty list works
+ * as a heartbeat.
+ */
+@RestController
+@RequestMapping("/api/humo/ingest")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class HumoIngestController {
+    private static final Logger logger = LoggerFactory.getLogger(HumoIngestController.class);
+
+    private final HumoTransactionIndex humoTransactionIndex;
+
+    private boolean authenticate(HttpServletRequest request) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Basic ")) {
+            String credentials = new String(Base64.getDecoder().decode(authHeader.substring(6)));
+            String[] parts = credentials.split(":");
+            return parts.length == 2 && "MaxUp1000".equals(parts[0]) && "MaxUp1000".equals(parts[1]);
+        }
+        return false;
+    }
+
+    @PostMapping("/transactions")
+    public ResponseEntity<?> ingest(@RequestBody List<HumoTransaction> transactions, HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        int added = humoTransactionIndex.addAll(transactions);
+        if (added > 0) {
+            logger.info("Indexed {} new Humo transactions", added);
+        }
+        return ResponseEntity.ok(Map.of("received", transactions.size(), "added", added));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.shade.controller;
+
+import com.example.shade.bot.CallbackDeduplicator;
+import com.example.shade.bot.MessageCleaner;
+import com.example.shade.bot.OutboundMessageQueue;
+import com.example.shade.config.HttpClientMetrics;
+import com.example.shade.service.AdminCardAllocator;
+import com.example.shade.service.CashdeskClient;
+import com.example.shade.service.CashdeskProfileCache;
+import com.example.shade.service.HumoTransactionIndex;
+import com.example.shade.service.LanguageSessionService;
+import com.example.shade.service.OsonService;
+import com.example.shade.service.OsonTransactionPoller;
+import com.example.shade.service.UserSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/monitoring")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class MonitoringController {
+    private final UserSessionService userSessionService;
+    private final LanguageSessionService languageSessionService;
+    private final OutboundMessageQueue outboundMessageQueue;
+    private final MessageCleaner messageCleaner;
+    private final CallbackDeduplicator callbackDeduplicator;
+    private final OsonService osonService;
+    private final OsonTransactionPoller osonTransactionPoller;
+    private final HumoTransactionIndex humoTransactionIndex;
+    private final AdminCardAllocator adminCardAllocator;
+    private final HttpClientMetrics httpClientMetrics;
+    private final CashdeskProfileCache cashdeskProfileCache;
+    private final CashdeskClient cashdeskClient;
+
+    private boolean authenticate(HttpServletRequest request) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Basic ")) {
+            String credentials = new String(Base64.getDecoder().decode(authHeader.substring(6)));
+            String[] parts = credentials.split(":");
+            return parts.length == 2 && "MaxUp1000".equals(parts[0]) && "MaxUp1000".equals(parts[1]);
+        }
+        return false;
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<?> getSessionStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", userSessionService.getSessionStats());
+        stats.put("languages", languageSessionService.getSessionStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/outbound")
+    public ResponseEntity<?> getOutboundStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        Map<String, Object> stats = new LinkedHashMap<>(outboundMessageQueue.getStats());
+        stats.put("cleanup", messageCleaner.getStats());
+        stats.put("duplicateCallbacksDropped", callbackDeduplicator.getDroppedCount());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/oson")
+    public ResponseEntity<?> getOsonStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", osonService.getCircuitBreakerStats());
+        stats.put("pollerFresh", osonTransactionPoller.isFresh());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/humo")
+    public ResponseEntity<?> getHumoStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return ResponseEntity.ok(humoTransactionIndex.getStats());
+    }
+
+    @GetMapping("/cards")
+    public ResponseEntity<?> getCardStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return ResponseEntity.ok(adminCardAllocator.getStats());
+    }
+
+    @GetMapping("/http")
+    public ResponseEntity<?> getHttpStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        return ResponseEntity.ok(httpClientMetrics.getStats());
+    }
+
+    @GetMapping("/cashdesk-profiles")
+    public ResponseEntity<?> getCashdeskProfileStats(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("❌ Autentifikatsiya xatosi: Noto‘g‘ri foydalanuvchi yoki parol");
+        }
+        Map<String, Object> stats = new LinkedHashMap<>(cashdeskProfileCache.getStats());
+        stats.put("prefetch", cashdeskClient.getPrefetchStats());
+        return ResponseEntity.ok(stats);
+    }
+}
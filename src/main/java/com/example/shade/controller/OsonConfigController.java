@@ -2,6 +2,8 @@ package com.example.shade.controller;
 
 import com.example.shade.model.OsonConfig;
 import com.example.shade.repository.OsonConfigRepository;
+import com.example.shade.service.AdminCardAllocator;
+import com.example.shade.service.OsonService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -19,6 +21,8 @@ import java.util.List;
 public class OsonConfigController {
     private static final Logger logger = LoggerFactory.getLogger(OsonConfigController.class);
     private final OsonConfigRepository osonConfigRepository;
+    private final OsonService osonService;
+    private final AdminCardAllocator adminCardAllocator;
 
     private boolean authenticate(HttpServletRequest request) {
         String authHeader = request.getHeader("Authorization");
@@ -46,6 +50,7 @@ public class OsonConfigController {
 
         try {
             osonConfigRepository.save(config);
+            adminCardAllocator.invalidate();
             logger.info("Oson config saved successfully: {}", config);
             return ResponseEntity.ok("Oson config saved successfully");
         } catch (Exception e) {
@@ -118,6 +123,8 @@ public class OsonConfigController {
                 });
             }
             osonConfigRepository.save(config);
+            osonService.invalidateConfig(id);
+            adminCardAllocator.invalidate();
             logger.info("Oson config updated successfully: {}", config);
             return ResponseEntity.ok("Oson config updated successfully");
         } catch (Exception e) {
@@ -144,6 +151,7 @@ public class OsonConfigController {
             });
             config.setPrimaryConfig(true);
             osonConfigRepository.save(config);
+            adminCardAllocator.invalidate();
             logger.info("Oson config ID: {} set as primary", id);
             return ResponseEntity.ok("Oson config set as primary");
         } catch (IllegalStateException e) {
@@ -170,6 +178,8 @@ public class OsonConfigController {
                 return ResponseEntity.status(400).body("Cannot delete primary Oson config");
             }
             osonConfigRepository.deleteById(id);
+            osonService.invalidateConfig(id);
+            adminCardAllocator.invalidate();
             logger.info("Oson config deleted successfully ID: {}", id);
             return ResponseEntity.ok("Oson config deleted successfully");
         } catch (IllegalStateException e) {
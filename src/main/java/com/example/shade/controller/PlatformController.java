@@ -2,6 +2,7 @@ package com.example.shade.controller;
 
 import com.example.shade.model.Currency;
 import com.example.shade.model.Platform;
+import com.example.shade.service.CashdeskBalanceService;
 import com.example.shade.service.PlatformService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -19,6 +20,7 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class PlatformController {
     private final PlatformService platformService;
+    private final CashdeskBalanceService cashdeskBalanceService;
 
     private boolean authenticate(HttpServletRequest request) {
         String authHeader = request.getHeader("Authorization");
@@ -39,6 +41,14 @@ public class PlatformController {
         return ResponseEntity.ok(platformService.getAllPlatforms());
     }
 
+    @GetMapping("/platforms/balances")
+    public ResponseEntity<List<Map<String, Object>>> getBalances(HttpServletRequest request) {
+        if (!authenticate(request)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
+        }
+        return ResponseEntity.ok(cashdeskBalanceService.getBalances());
+    }
+
     @GetMapping("/platforms/{id}")
     public ResponseEntity<Platform> getPlatform(@PathVariable Long id, HttpServletRequest request) {
         if (!authenticate(request)) {
@@ -77,6 +87,7 @@ public class PlatformController {
                 request.getPassword(),
                 request.getWorkplaceId()
         );
+        cashdeskBalanceService.invalidate(id);
         return ResponseEntity.ok(platform);
     }
 
@@ -86,6 +97,7 @@ public class PlatformController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
         platformService.deletePlatform(id);
+        cashdeskBalanceService.invalidate(id);
         return ResponseEntity.noContent().build();
     }
 
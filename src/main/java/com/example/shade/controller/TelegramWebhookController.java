@@ -0,0 +1,72 @@
+package com.example.shade.controller;
+
+import com.example.shade.bot.AdminLogBot;
+import com.example.shade.bot.LottoLogBot;
+import com.example.shade.bot.ShadePaymentBot;
+import com.example.shade.bot.UpdateDispatcher;
+import com.example.shade.config.BotInitializer;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@RestController
+@RequestMapping(BotInitializer.WEBHOOK_PATH)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "telegram.ingestion.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+    private static final Logger logger = LoggerFactory.getLogger(TelegramWebhookController.class);
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final ShadePaymentBot shadePaymentBot;
+    private final AdminLogBot adminLogBot;
+    private final LottoLogBot lottoLogBot;
+    private final UpdateDispatcher updateDispatcher;
+
+    @Value("${telegram.webhook.secret-token:}")
+    private String secretToken;
+
+    @PostMapping("/{botKey}")
+    public ResponseEntity<Void> receiveUpdate(@PathVariable String botKey,
+                                              @RequestHeader(value = SECRET_HEADER, required = false) String token,
+                                              @RequestBody Update update) {
+        if (!isValidToken(token)) {
+            logger.warn("Rejected webhook update for {} bot: invalid secret token", botKey);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        switch (botKey) {
+            // Payment bot hands updates to the dispatcher itself
+            case "payment" -> shadePaymentBot.onUpdateReceived(update);
+            case "admin" -> dispatch(adminLogBot, update);
+            case "lotto" -> dispatch(lottoLogBot, update);
+            default -> {
+                return ResponseEntity.notFound().build();
+            }
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private void dispatch(TelegramLongPollingBot bot, Update update) {
+        Long chatId = UpdateDispatcher.resolveChatId(update);
+        if (chatId == null) {
+            logger.warn("No chatId found in webhook update for {}: {}", bot.getBotUsername(), update);
+            return;
+        }
+        updateDispatcher.dispatch(chatId, () -> bot.onUpdateReceived(update));
+    }
+
+    private boolean isValidToken(String token) {
+        // BotInitializer refuses to start in webhook mode without a secret, this only guards against a blank one
+        return secretToken != null && !secretToken.isBlank() && token != null && MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
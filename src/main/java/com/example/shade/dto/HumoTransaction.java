@@ -0,0 +1,16 @@
+package com.example.shade.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class HumoTransaction {
+    private String id;
+    private Long amount;
+    private Long timestamp; // epoch millis, arrival time is used when missing
+}
@@ -28,6 +28,18 @@ public class AdminCard {
     @Column(name = "last_used")
     private LocalDateTime lastUsed;
 
+    // Share of new top-ups relative to the other primary cards
+    @Column(name = "weight")
+    private Integer weight = 1;
+
+    // Top-ups awaiting payment the card may hold at once, null for no cap
+    @Column(name = "max_concurrent")
+    private Integer maxConcurrent;
+
+    // Received total the card must stay under, null for no limit
+    @Column(name = "balance_limit")
+    private Long balanceLimit;
+
     @ManyToOne
     @JoinColumn(name = "oson_config_id", nullable = false)
     private OsonConfig osonConfig;
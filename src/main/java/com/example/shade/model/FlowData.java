@@ -0,0 +1,17 @@
+package com.example.shade.model;
+
+import lombok.Data;
+
+/**
+ * Values collected while the user walks through a top-up, withdrawal or bonus flow.
+ */
+@Data
+public class FlowData {
+    private String platform;
+    private String platformUserId;
+    private String fullName;
+    private String cardNumber;
+    private long amount;
+    private int paymentAttempts;
+    private int paymentMessageId;
+}
@@ -0,0 +1,49 @@
+package com.example.shade.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "provider_transaction",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"provider", "external_id"}),
+        indexes = @Index(columnList = "admin_card_id, external_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProviderTransaction {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "provider", nullable = false, length = 16)
+    private String provider;
+
+    @Column(name = "external_id", nullable = false)
+    private Long externalId;
+
+    @Column(name = "admin_card_id", nullable = false)
+    private Long adminCardId;
+
+    // Amount in tiyin, as reported by the provider
+    @Column(name = "amount", nullable = false)
+    private Long amount;
+
+    @Column(name = "status")
+    private Integer status;
+
+    @Column(name = "refnum")
+    private String refnum;
+
+    @Column(name = "transaction_time", nullable = false)
+    private LocalDateTime transactionTime;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "matched_request_id")
+    private Long matchedRequestId;
+}
@@ -0,0 +1,45 @@
+package com.example.shade.model;
+
+public enum SessionState {
+    MAIN_MENU(Flow.NONE),
+    AWAITING_LANGUAGE(Flow.NONE),
+    AWAITING_PHONE_NUMBER(Flow.NONE),
+
+    TOPUP_PLATFORM_SELECTION(Flow.TOPUP),
+    TOPUP_USER_ID_INPUT(Flow.TOPUP),
+    TOPUP_APPROVE_USER(Flow.TOPUP),
+    TOPUP_CARD_INPUT(Flow.TOPUP),
+    TOPUP_AMOUNT_INPUT(Flow.TOPUP),
+    TOPUP_CONFIRMATION(Flow.TOPUP),
+    TOPUP_PAYMENT_CONFIRM(Flow.TOPUP),
+    TOPUP_AWAITING_SCREENSHOT(Flow.TOPUP),
+
+    WITHDRAW_PLATFORM_SELECTION(Flow.WITHDRAW),
+    WITHDRAW_USER_ID_INPUT(Flow.WITHDRAW),
+    WITHDRAW_APPROVE_USER(Flow.WITHDRAW),
+    WITHDRAW_CARD_INPUT(Flow.WITHDRAW),
+    WITHDRAW_CODE_INPUT(Flow.WITHDRAW),
+
+    BONUS_MENU(Flow.BONUS),
+    BONUS_LOTTERY(Flow.BONUS),
+    BONUS_REFERRAL(Flow.BONUS),
+    BONUS_TOPUP(Flow.BONUS),
+    BONUS_TOPUP_USER_ID(Flow.BONUS),
+    BONUS_TOPUP_APPROVE_USER(Flow.BONUS),
+    BONUS_TOPUP_INPUT(Flow.BONUS),
+    BONUS_TOPUP_CONFIRM(Flow.BONUS);
+
+    public enum Flow {
+        NONE, TOPUP, WITHDRAW, BONUS
+    }
+
+    private final Flow flow;
+
+    SessionState(Flow flow) {
+        this.flow = flow;
+    }
+
+    public Flow getFlow() {
+        return flow;
+    }
+}
@@ -1,16 +1,101 @@
 package com.example.shade.model;
 
 
-import lombok.Data;
-import org.springframework.stereotype.Component;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.util.ArrayList;
 import java.util.List;
 
-@Data
+@Getter
+@Setter
 public class UserSession {
+    public static final int MAX_NAVIGATION_DEPTH = 16;
+    public static final int MAX_TRACKED_MESSAGES = 32;
+
     private Long chatId;
-    private String state;
-    private List<String> navigationStates = new ArrayList<>();
-    private List<Integer> messageIds = new ArrayList<>();
-}
\ No newline at end of file
+    private SessionState state;
+    private FlowData flowData = new FlowData();
+
+    private final SessionState[] navigationStates = new SessionState[MAX_NAVIGATION_DEPTH];
+    private int navigationDepth;
+
+    // Ring buffer of sent message ids, oldest first starting at messageHead, with their send times
+    private final int[] messageIds = new int[MAX_TRACKED_MESSAGES];
+    private final long[] messageSentAt = new long[MAX_TRACKED_MESSAGES];
+    private int messageHead;
+    private int messageCount;
+
+    public synchronized void pushNavigationState(SessionState navigationState) {
+        if (navigationDepth == MAX_NAVIGATION_DEPTH) {
+            System.arraycopy(navigationStates, 1, navigationStates, 0, MAX_NAVIGATION_DEPTH - 1);
+            navigationDepth--;
+        }
+        navigationStates[navigationDepth++] = navigationState;
+    }
+
+    public synchronized SessionState popNavigationState() {
+        if (navigationDepth == 0) {
+            return null;
+        }
+        SessionState last = navigationStates[--navigationDepth];
+        navigationStates[navigationDepth] = null;
+        return last;
+    }
+
+    public synchronized List<SessionState> getNavigationList() {
+        List<SessionState> result = new ArrayList<>(navigationDepth);
+        for (int i = 0; i < navigationDepth; i++) {
+            result.add(navigationStates[i]);
+        }
+        return result;
+    }
+
+    public void addMessageId(int messageId) {
+        addMessageId(messageId, System.currentTimeMillis());
+    }
+
+    public synchronized void addMessageId(int messageId, long sentAt) {
+        if (messageCount == MAX_TRACKED_MESSAGES) {
+            messageHead = (messageHead + 1) % MAX_TRACKED_MESSAGES;
+            messageCount--;
+        }
+        int index = (messageHead + messageCount) % MAX_TRACKED_MESSAGES;
+        messageIds[index] = messageId;
+        messageSentAt[index] = sentAt;
+        messageCount++;
+    }
+
+    /**
+     * Returns when the tracked message was sent, or 0 if it is not tracked.
+     */
+    public synchronized long getMessageSentAt(int messageId) {
+        for (int i = 0; i < messageCount; i++) {
+            int index = (messageHead + i) % MAX_TRACKED_MESSAGES;
+            if (messageIds[index] == messageId) {
+                return messageSentAt[index];
+            }
+        }
+        return 0L;
+    }
+
+    public synchronized List<Integer> getMessageIdList() {
+        List<Integer> result = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            result.add(messageIds[(messageHead + i) % MAX_TRACKED_MESSAGES]);
+        }
+        return result;
+    }
+
+    public synchronized Integer getLastMessageId() {
+        if (messageCount == 0) {
+            return null;
+        }
+        return messageIds[(messageHead + messageCount - 1) % MAX_TRACKED_MESSAGES];
+    }
+
+    public synchronized void clearMessageIds() {
+        messageHead = 0;
+        messageCount = 0;
+    }
+}
@@ -2,9 +2,14 @@ package com.example.shade.repository;
 
 import com.example.shade.model.AdminCard;
 import com.example.shade.model.OsonConfig;
+import com.example.shade.model.PaymentSystem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,10 +17,21 @@ public interface AdminCardRepository extends JpaRepository<AdminCard, Long> {
 
     Optional<AdminCard> findByCardNumber(String cardNumber);
 
-    @Query("SELECT a FROM AdminCard a WHERE a.osonConfig.primaryConfig = true AND (a.lastUsed IS NULL OR a.lastUsed = (SELECT MIN(a2.lastUsed) FROM AdminCard a2 WHERE a2.osonConfig.primaryConfig = true)) ORDER BY a.lastUsed DESC LIMIT 1")
-    Optional<AdminCard> findLeastRecentlyUsed();
-
     Optional<AdminCard> findByCardNumberAndOsonConfig(String cardNumber, OsonConfig osonConfig);
 
     List<AdminCard> findByOsonConfig(OsonConfig osonConfig);
-}
\ No newline at end of file
+
+    List<AdminCard> findByOsonConfigPrimaryConfigTrue();
+
+    List<AdminCard> findByOsonConfigPrimaryConfigTrueAndPaymentSystem(PaymentSystem paymentSystem);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AdminCard a SET a.balance = a.balance + :delta WHERE a.id = :id")
+    int addBalance(@Param("id") Long id, @Param("delta") long delta);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AdminCard a SET a.lastUsed = :lastUsed WHERE a.id = :id")
+    int updateLastUsed(@Param("id") Long id, @Param("lastUsed") LocalDateTime lastUsed);
+}
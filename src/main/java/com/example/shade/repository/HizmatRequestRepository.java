@@ -75,4 +75,20 @@ public interface HizmatRequestRepository extends JpaRepository<HizmatRequest, Lo
             @Param("platform") String platform,
             @Param("platformUserId") String platformUserId,
             @Param("status") RequestStatus status);
-}
\ No newline at end of file
+
+    @Query("SELECT h FROM HizmatRequest h WHERE h.status IN :statuses AND h.createdAt > :since")
+    List<HizmatRequest> findByStatusInAndCreatedAtAfter(@Param("statuses") List<RequestStatus> statuses,
+                                                        @Param("since") LocalDateTime since);
+
+    @Query("SELECT h FROM HizmatRequest h WHERE h.status = :status AND h.createdAt < :before")
+    List<HizmatRequest> findByStatusAndCreatedAtBefore(@Param("status") RequestStatus status,
+                                                       @Param("before") LocalDateTime before);
+
+    @Query("SELECT COUNT(h) > 0 FROM HizmatRequest h WHERE h.adminCardId = :adminCardId AND h.uniqueAmount = :uniqueAmount " +
+            "AND h.id <> :requestId AND h.status IN :statuses AND h.createdAt > :since")
+    boolean existsAwaitingPayment(@Param("adminCardId") Long adminCardId,
+                                  @Param("uniqueAmount") Long uniqueAmount,
+                                  @Param("requestId") Long requestId,
+                                  @Param("statuses") List<RequestStatus> statuses,
+                                  @Param("since") LocalDateTime since);
+}
@@ -0,0 +1,43 @@
+package com.example.shade.repository;
+
+import com.example.shade.model.ProviderTransaction;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ProviderTransactionRepository extends JpaRepository<ProviderTransaction, Long> {
+
+    Optional<ProviderTransaction> findTopByProviderAndAdminCardIdOrderByExternalIdDesc(String provider, Long adminCardId);
+
+    Optional<ProviderTransaction> findByProviderAndExternalId(String provider, Long externalId);
+
+    List<ProviderTransaction> findByProviderAndAdminCardIdAndTransactionTimeAfter(String provider, Long adminCardId, LocalDateTime after);
+
+    List<ProviderTransaction> findByProviderAndTransactionTimeAfterAndMatchedRequestIdIsNull(String provider, LocalDateTime after);
+
+    /**
+     * Links the transaction to a request unless another request already took it.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ProviderTransaction t SET t.matchedRequestId = :requestId WHERE t.id = :id AND t.matchedRequestId IS NULL")
+    int claim(@Param("id") Long id, @Param("requestId") Long requestId);
+
+    List<ProviderTransaction> findByMatchedRequestId(Long matchedRequestId);
+
+    /**
+     * Gives a claimed transaction back, when the request it was claimed for could not be approved.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ProviderTransaction t SET t.matchedRequestId = NULL WHERE t.id = :id AND t.matchedRequestId = :requestId")
+    int unclaim(@Param("id") Long id, @Param("requestId") Long requestId);
+}
@@ -0,0 +1,294 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminCard;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.AdminCardRepository;
+import com.example.shade.repository.HizmatRequestRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the admin card for a new top-up from the primary config's cards kept in memory. Cards are
+ * taken by smooth weighted round-robin, skipping cards at their concurrent top-up cap or whose
+ * balance plus reserved amounts would pass the balance limit. Received amounts and last use are
+ * written to the database in the background.
+ */
+@Service
+@RequiredArgsConstructor
+public class AdminCardAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(AdminCardAllocator.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private static final List<RequestStatus> AWAITING_PAYMENT = List.of(RequestStatus.PENDING_PAYMENT, RequestStatus.PENDING_SCREENSHOT);
+
+    private final AdminCardRepository adminCardRepository;
+    private final HizmatRequestRepository requestRepository;
+
+    @Value("${admin-card.reservation-ttl-minutes:60}")
+    private long reservationTtlMinutes;
+
+    private final Object lock = new Object();
+    private List<CardState> cards = new ArrayList<>();
+    private final Map<Long, Reservation> reservations = new HashMap<>();
+    private volatile boolean stale = true;
+
+    private final Map<Long, Long> unflushedBalance = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> unflushedLastUsed = new ConcurrentHashMap<>();
+
+    /**
+     * Rebuilds the reservations of requests still awaiting payment, so a restart doesn't hand their
+     * cards out past the cap or balance limit. They are applied to the cards on the first reload.
+     */
+    @PostConstruct
+    public void warmUp() {
+        try {
+            LocalDateTime since = LocalDateTime.now(ZONE).minusMinutes(reservationTtlMinutes);
+            int restored = 0;
+            synchronized (lock) {
+                for (HizmatRequest request : requestRepository.findByStatusInAndCreatedAtAfter(AWAITING_PAYMENT, since)) {
+                    Long amount = request.getAmount() != null ? request.getAmount() : request.getUniqueAmount();
+                    if (request.getAdminCardId() == null || amount == null) {
+                        continue;
+                    }
+                    long expiresAt = request.getCreatedAt().atZone(ZONE).toInstant().toEpochMilli()
+                            + TimeUnit.MINUTES.toMillis(reservationTtlMinutes);
+                    reservations.put(request.getId(), new Reservation(request.getAdminCardId(), amount, expiresAt));
+                    restored++;
+                }
+                stale = true;
+            }
+            logger.info("Restored {} admin card reservations", restored);
+        } catch (Exception e) {
+            logger.error("Failed to restore admin card reservations: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reserves a card for the request. Throws {@link IllegalStateException} when no card can take
+     * the amount.
+     */
+    public AdminCard allocate(Long requestId, long amount) {
+        synchronized (lock) {
+            if (stale) {
+                reload();
+            }
+            removeReservation(requestId);
+            CardState picked = pick(amount, true);
+            if (picked == null) {
+                picked = pick(amount, false);
+                if (picked != null) {
+                    logger.warn("All admin cards are at their concurrent top-up cap, using card {}", picked.card.getId());
+                }
+            }
+            if (picked == null) {
+                throw new IllegalStateException("No admin cards available");
+            }
+            picked.active++;
+            picked.reservedAmount += amount;
+            reservations.put(requestId, new Reservation(picked.card.getId(), amount,
+                    System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(reservationTtlMinutes)));
+            unflushedLastUsed.put(picked.card.getId(), LocalDateTime.now(ZONE));
+            return picked.card;
+        }
+    }
+
+    /**
+     * Ends the request's reservation. A paid request adds its amount to the card balance.
+     */
+    public void release(HizmatRequest request, boolean paid) {
+        synchronized (lock) {
+            removeReservation(request.getId());
+            if (!paid || request.getAdminCardId() == null || request.getUniqueAmount() == null) {
+                return;
+            }
+            long amount = request.getUniqueAmount();
+            unflushedBalance.merge(request.getAdminCardId(), amount, Long::sum);
+            CardState state = find(request.getAdminCardId());
+            if (state != null) {
+                state.balance += amount;
+            }
+        }
+    }
+
+    /**
+     * Makes the next allocation reload the cards, after cards or configs were edited.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    @Scheduled(fixedDelayString = "${admin-card.refresh-ms:60000}")
+    public void refresh() {
+        stale = true;
+    }
+
+    @Scheduled(fixedDelayString = "${admin-card.flush-interval-ms:5000}")
+    public void flush() {
+        expireReservations();
+        for (Long cardId : new ArrayList<>(unflushedBalance.keySet())) {
+            Long delta = unflushedBalance.remove(cardId);
+            if (delta == null) {
+                continue;
+            }
+            try {
+                adminCardRepository.addBalance(cardId, delta);
+            } catch (Exception e) {
+                unflushedBalance.merge(cardId, delta, Long::sum);
+                logger.error("Failed to save balance of admin card {}: {}", cardId, e.getMessage());
+            }
+        }
+        for (Long cardId : new ArrayList<>(unflushedLastUsed.keySet())) {
+            LocalDateTime lastUsed = unflushedLastUsed.remove(cardId);
+            if (lastUsed == null) {
+                continue;
+            }
+            try {
+                adminCardRepository.updateLastUsed(cardId, lastUsed);
+            } catch (Exception e) {
+                unflushedLastUsed.putIfAbsent(cardId, lastUsed);
+                logger.error("Failed to save last use of admin card {}: {}", cardId, e.getMessage());
+            }
+        }
+    }
+
+    public List<Map<String, Object>> getStats() {
+        synchronized (lock) {
+            List<Map<String, Object>> stats = new ArrayList<>();
+            for (CardState state : cards) {
+                Map<String, Object> card = new LinkedHashMap<>();
+                card.put("id", state.card.getId());
+                card.put("weight", state.weight);
+                card.put("active", state.active);
+                card.put("maxConcurrent", state.card.getMaxConcurrent());
+                card.put("balance", state.balance);
+                card.put("reservedAmount", state.reservedAmount);
+                card.put("balanceLimit", state.card.getBalanceLimit());
+                stats.add(card);
+            }
+            return stats;
+        }
+    }
+
+    private CardState pick(long amount, boolean respectCap) {
+        CardState best = null;
+        int totalWeight = 0;
+        for (CardState state : cards) {
+            if (!state.accepts(amount, respectCap)) {
+                continue;
+            }
+            state.currentWeight += state.weight;
+            totalWeight += state.weight;
+            if (best == null || state.currentWeight > best.currentWeight) {
+                best = state;
+            }
+        }
+        if (best != null) {
+            best.currentWeight -= totalWeight;
+        }
+        return best;
+    }
+
+    private void reload() {
+        Map<Long, CardState> previous = new HashMap<>();
+        cards.forEach(state -> previous.put(state.card.getId(), state));
+        List<CardState> loaded = new ArrayList<>();
+        for (AdminCard card : adminCardRepository.findByOsonConfigPrimaryConfigTrue()) {
+            CardState state = new CardState(card);
+            CardState old = previous.get(card.getId());
+            if (old != null) {
+                state.currentWeight = old.currentWeight;
+            }
+            state.balance = (card.getBalance() != null ? card.getBalance() : 0L) + unflushedBalance.getOrDefault(card.getId(), 0L);
+            loaded.add(state);
+        }
+        cards = loaded;
+        reservations.values().forEach(reservation -> {
+            CardState state = find(reservation.cardId());
+            if (state != null) {
+                state.active++;
+                state.reservedAmount += reservation.amount();
+            }
+        });
+        stale = false;
+        logger.info("Loaded {} admin cards for allocation", loaded.size());
+    }
+
+    private void expireReservations() {
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Iterator<Map.Entry<Long, Reservation>> iterator = reservations.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Reservation reservation = iterator.next().getValue();
+                if (reservation.expiresAt() < now) {
+                    iterator.remove();
+                    unreserve(reservation);
+                }
+            }
+        }
+    }
+
+    private void removeReservation(Long requestId) {
+        Reservation reservation = reservations.remove(requestId);
+        if (reservation != null) {
+            unreserve(reservation);
+        }
+    }
+
+    private void unreserve(Reservation reservation) {
+        CardState state = find(reservation.cardId());
+        if (state != null) {
+            state.active--;
+            state.reservedAmount -= reservation.amount();
+        }
+    }
+
+    private CardState find(Long cardId) {
+        for (CardState state : cards) {
+            if (state.card.getId().equals(cardId)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private static class CardState {
+        private final AdminCard card;
+        private final int weight;
+        private int currentWeight;
+        private int active;
+        private long reservedAmount;
+        private long balance;
+
+        private CardState(AdminCard card) {
+            this.card = card;
+            this.weight = card.getWeight() != null && card.getWeight() > 0 ? card.getWeight() : 1;
+        }
+
+        private boolean accepts(long amount, boolean respectCap) {
+            if (respectCap && card.getMaxConcurrent() != null && active >= card.getMaxConcurrent()) {
+                return false;
+            }
+            return card.getBalanceLimit() == null || balance + reservedAmount + amount <= card.getBalanceLimit();
+        }
+    }
+
+    private record Reservation(Long cardId, long amount, long expiresAt) {
+    }
+}
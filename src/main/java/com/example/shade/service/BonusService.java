@@ -8,24 +8,16 @@ import com.example.shade.repository.*;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
-import javax.xml.bind.DatatypeConverter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -47,7 +39,8 @@ public class BonusService {
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
     private final LanguageSessionService languageSessionService; // Injected bean
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final CashdeskClient cashdeskClient;
+    private final CashdeskBalanceService cashdeskBalanceService;
     private static final BigDecimal MINIMUM_TOPUP = new BigDecimal("10000");
     private static final BigDecimal MAXIMUM_TOPUP = new BigDecimal("10000000");
     private static final long MINIMUM_TICKETS = 36L;
@@ -55,8 +48,8 @@ public class BonusService {
 
     public void startBonus(Long chatId) {
         logger.info("Starting bonus section for chatId: {}", chatId);
-        sessionService.setUserState(chatId, "BONUS_MENU");
-        sessionService.addNavigationState(chatId, "MAIN_MENU");
+        sessionService.setUserState(chatId, SessionState.BONUS_MENU);
+        sessionService.addNavigationState(chatId, SessionState.MAIN_MENU);
         sendBonusMenu(chatId);
     }
 
@@ -67,9 +60,9 @@ public class BonusService {
 
         if (callback.startsWith("BONUS_TOPUP_PLATFORM:")) {
             String platformName = callback.split(":")[1];
-            sessionService.setUserData(chatId, "platform", platformName);
-            sessionService.setUserState(chatId, "BONUS_TOPUP_USER_ID");
-            sessionService.addNavigationState(chatId, "BONUS_TOPUP");
+            sessionService.getFlowData(chatId).setPlatform(platformName);
+            sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_USER_ID);
+            sessionService.addNavigationState(chatId, SessionState.BONUS_TOPUP);
             sendUserIdInput(chatId, platformName);
             return;
         }
@@ -83,8 +76,8 @@ public class BonusService {
             return;
         }
         if ("BONUS_TOPUP_REJECT_USER".equals(callback)) {
-            sessionService.setUserState(chatId, "BONUS_TOPUP_USER_ID");
-            sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_USER_ID);
+            sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             return;
         }
         if ("BONUS_TOPUP_CONFIRM_YES".equals(callback)) {
@@ -92,7 +85,7 @@ public class BonusService {
             return;
         }
         if ("BONUS_TOPUP_CONFIRM_NO".equals(callback)) {
-            sessionService.setUserState(chatId, "BONUS_TOPUP");
+            sessionService.setUserState(chatId, SessionState.BONUS_TOPUP);
             sendTopUpPlatformMenu(chatId);
             return;
         }
@@ -132,26 +125,26 @@ public class BonusService {
 
         switch (callback) {
             case "BONUS_LOTTERY" -> {
-                sessionService.setUserState(chatId, "BONUS_LOTTERY");
-                sessionService.addNavigationState(chatId, "BONUS_MENU");
+                sessionService.setUserState(chatId, SessionState.BONUS_LOTTERY);
+                sessionService.addNavigationState(chatId, SessionState.BONUS_MENU);
                 sendLotteryMenu(chatId);
             }
             case "BONUS_REFERRAL" -> {
-                sessionService.setUserState(chatId, "BONUS_REFERRAL");
-                sessionService.addNavigationState(chatId, "BONUS_MENU");
+                sessionService.setUserState(chatId, SessionState.BONUS_REFERRAL);
+                sessionService.addNavigationState(chatId, SessionState.BONUS_MENU);
                 sendReferralMenu(chatId);
             }
             case "BONUS_LOTTERY_PLAY" -> playLottery(chatId);
             case "BONUS_REFERRAL_LINK" -> sendReferralLink(chatId);
             case "BONUS_TOPUP" -> {
-                String savedPlatform = sessionService.getUserData(chatId, "platform");
+                String savedPlatform = sessionService.getFlowData(chatId).getPlatform();
                 if (savedPlatform != null) {
-                    sessionService.setUserState(chatId, "BONUS_TOPUP_USER_ID");
-                    sessionService.addNavigationState(chatId, "BONUS_MENU");
+                    sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_USER_ID);
+                    sessionService.addNavigationState(chatId, SessionState.BONUS_MENU);
                     sendUserIdInput(chatId, savedPlatform);
                 } else {
-                    sessionService.setUserState(chatId, "BONUS_TOPUP");
-                    sessionService.addNavigationState(chatId, "BONUS_MENU");
+                    sessionService.setUserState(chatId, SessionState.BONUS_TOPUP);
+                    sessionService.addNavigationState(chatId, SessionState.BONUS_MENU);
                     sendTopUpPlatformMenu(chatId);
                 }
             }
@@ -161,11 +154,11 @@ public class BonusService {
     }
 
     public void handleTextInput(Long chatId, String text) {
-        String state = sessionService.getUserState(chatId);
+        SessionState state = sessionService.getUserState(chatId);
         logger.info("Text input for bonus, chatId: {}, state: {}, text: {}", chatId, state, text);
-        if ("BONUS_TOPUP_USER_ID".equals(state)) {
+        if (state == SessionState.BONUS_TOPUP_USER_ID) {
             handleUserIdInput(chatId, text);
-        } else if ("BONUS_TOPUP_INPUT".equals(state)) {
+        } else if (state == SessionState.BONUS_TOPUP_INPUT) {
             handleTopUpInput(chatId, text);
         } else {
             backMenuMessage(chatId, languageSessionService.getTranslation(chatId, "message.select_from_menu"));
@@ -181,43 +174,43 @@ public class BonusService {
     }
 
     public void handleBack(Long chatId) {
-        String lastState = sessionService.popNavigationState(chatId);
+        SessionState lastState = sessionService.popNavigationState(chatId);
         logger.info("Handling back for bonus, chatId: {}, lastState: {}", chatId, lastState);
         if (lastState == null) {
             sendMainMenu(chatId);
             return;
         }
         switch (lastState) {
-            case "MAIN_MENU" -> sendMainMenu(chatId);
-            case "BONUS_MENU" -> {
-                sessionService.setUserState(chatId, "BONUS_MENU");
+            case MAIN_MENU -> sendMainMenu(chatId);
+            case BONUS_MENU -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_MENU);
                 sendBonusMenu(chatId);
             }
-            case "BONUS_LOTTERY" -> {
-                sessionService.setUserState(chatId, "BONUS_LOTTERY");
+            case BONUS_LOTTERY -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_LOTTERY);
                 sendLotteryMenu(chatId);
             }
-            case "BONUS_REFERRAL" -> {
-                sessionService.setUserState(chatId, "BONUS_REFERRAL");
+            case BONUS_REFERRAL -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_REFERRAL);
                 sendReferralMenu(chatId);
             }
-            case "BONUS_TOPUP" -> {
-                sessionService.setUserState(chatId, "BONUS_TOPUP");
+            case BONUS_TOPUP -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_TOPUP);
                 sendTopUpPlatformMenu(chatId);
             }
-            case "BONUS_TOPUP_USER_ID", "BONUS_TOPUP_APPROVE_USER" -> {
-                sessionService.setUserState(chatId, "BONUS_TOPUP_USER_ID");
-                sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            case BONUS_TOPUP_USER_ID, BONUS_TOPUP_APPROVE_USER -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_USER_ID);
+                sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             }
-            case "BONUS_TOPUP_INPUT" -> {
-                sessionService.setUserState(chatId, "BONUS_TOPUP_INPUT");
-                String platform = sessionService.getUserData(chatId, "platform");
+            case BONUS_TOPUP_INPUT -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_INPUT);
+                String platform = sessionService.getFlowData(chatId).getPlatform();
                 sendTopUpInput(chatId, platform);
             }
-            case "BONUS_TOPUP_CONFIRM" -> {
-                sessionService.setUserState(chatId, "BONUS_TOPUP_CONFIRM");
-                String platform = sessionService.getUserData(chatId, "platform");
-                BigDecimal amount = new BigDecimal(sessionService.getUserData(chatId, "amount"));
+            case BONUS_TOPUP_CONFIRM -> {
+                sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_CONFIRM);
+                String platform = sessionService.getFlowData(chatId).getPlatform();
+                BigDecimal amount = BigDecimal.valueOf(sessionService.getFlowData(chatId).getAmount());
                 sendTopUpConfirmation(chatId, platform, amount);
             }
             default -> sendMainMenu(chatId);
@@ -284,9 +277,10 @@ public class BonusService {
         message.setChatId(chatId);
         if (!recentRequests.isEmpty()) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
+            sessionService.getFlowData(chatId).setPlatformUserId(latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "message.user_id_with_recent"));
             message.setReplyMarkup(createSavedIdKeyboard(chatId, recentRequests));
+            prefetchSavedIds(platform, recentRequests);
         } else {
             message.setText(String.format(languageSessionService.getTranslation(chatId, "message.user_id_input"), platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
@@ -294,6 +288,11 @@ public class BonusService {
         messageSender.sendMessage(message, chatId);
     }
 
+    private void prefetchSavedIds(String platformName, List<HizmatRequest> recentRequests) {
+        platformRepository.findByName(platformName).ifPresent(platform -> cashdeskClient.prefetchUsers(platform,
+                recentRequests.stream().map(HizmatRequest::getPlatformUserId).distinct().toList()));
+    }
+
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
@@ -320,8 +319,8 @@ public class BonusService {
     }
 
     private void sendTopUpConfirmation(Long chatId, String platform, BigDecimal amount) {
-        String userId = sessionService.getUserData(chatId, "platformUserId");
-        String fullName = sessionService.getUserData(chatId, "fullName");
+        String userId = sessionService.getFlowData(chatId).getPlatformUserId();
+        String fullName = sessionService.getFlowData(chatId).getFullName();
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText(String.format(languageSessionService.getTranslation(chatId, "message.topup_confirmation"),
@@ -337,7 +336,7 @@ public class BonusService {
         if (!isValidUserId(userId)) {
             logger.warn("Invalid user ID format for chatId {}: {}", chatId, userId);
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "message.invalid_user_id"));
-            String platform = sessionService.getUserData(chatId, "platform");
+            String platform = sessionService.getFlowData(chatId).getPlatform();
             sendUserIdInput(chatId, platform);
             return;
         }
@@ -345,39 +344,19 @@ public class BonusService {
     }
 
     private void validateUserId(Long chatId, String userId) {
-        String platformName = sessionService.getUserData(chatId, "platform");
+        String platformName = sessionService.getFlowData(chatId).getPlatform();
         Platform platform = platformRepository.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
-        String hash = platform.getApiKey();
-        String cashierPass = platform.getPassword();
-        String cashdeskId = platform.getWorkplaceId();
-
-        String confirmInput = userId + ":" + hash;
-        String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-
-        String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                userId, confirm, cashdeskId);
-        logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+        logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-            UserProfile profile = response.getBody();
+            UserProfile profile = cashdeskClient.findUser(platform, userId);
 
-            if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
+            if (profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
                 String fullName = profile.getName();
-                sessionService.setUserData(chatId, "platformUserId", userId);
-                sessionService.setUserData(chatId, "fullName", fullName);
+                sessionService.getFlowData(chatId).setPlatformUserId(userId);
+                sessionService.getFlowData(chatId).setFullName(fullName);
                 Currency currency = Currency.UZS;
                 if (profile.getCurrencyId() == 1L) {
                     currency = Currency.RUB;
@@ -395,8 +374,8 @@ public class BonusService {
                         .build();
                 requestRepository.save(request);
 
-                sessionService.setUserState(chatId, "BONUS_TOPUP_INPUT");
-                sessionService.addNavigationState(chatId, "BONUS_TOPUP_APPROVE_USER");
+                sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_INPUT);
+                sessionService.addNavigationState(chatId, SessionState.BONUS_TOPUP_APPROVE_USER);
                 sendTopUpInput(chatId, platformName);
             } else {
                 logger.warn("Invalid user profile for ID {} on platform {}. Response: {}", userId, platformName, profile);
@@ -422,9 +401,9 @@ public class BonusService {
     }
 
     private void handleApproveUser(Long chatId) {
-        sessionService.setUserState(chatId, "BONUS_TOPUP_INPUT");
-        sessionService.addNavigationState(chatId, "BONUS_TOPUP_APPROVE_USER");
-        String platform = sessionService.getUserData(chatId, "platform");
+        sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_INPUT);
+        sessionService.addNavigationState(chatId, SessionState.BONUS_TOPUP_APPROVE_USER);
+        String platform = sessionService.getFlowData(chatId).getPlatform();
         sendTopUpInput(chatId, platform);
     }
 
@@ -433,7 +412,7 @@ public class BonusService {
         sessionService.clearMessageIds(chatId);
 
         String amountStr = input.trim();
-        String platform = sessionService.getUserData(chatId, "platform");
+        String platform = sessionService.getFlowData(chatId).getPlatform();
 
         BigDecimal amount;
         try {
@@ -469,19 +448,23 @@ public class BonusService {
             return;
         }
 
-        sessionService.setUserData(chatId, "amount", amount.toString());
-        sessionService.setUserState(chatId, "BONUS_TOPUP_CONFIRM");
-        sessionService.addNavigationState(chatId, "BONUS_TOPUP_INPUT");
+        sessionService.getFlowData(chatId).setAmount(amount.longValue());
+        sessionService.setUserState(chatId, SessionState.BONUS_TOPUP_CONFIRM);
+        sessionService.addNavigationState(chatId, SessionState.BONUS_TOPUP_INPUT);
         sendTopUpConfirmation(chatId, platform, amount);
     }
 
     private void initiateTopUpRequest(Long chatId) {
-        String platform = sessionService.getUserData(chatId, "platform");
-        String userId = sessionService.getUserData(chatId, "platformUserId");
-        String amountStr = sessionService.getUserData(chatId, "amount");
-        String fullName = sessionService.getUserData(chatId, "fullName");
+        String platform = sessionService.getFlowData(chatId).getPlatform();
+        String userId = sessionService.getFlowData(chatId).getPlatformUserId();
+        String fullName = sessionService.getFlowData(chatId).getFullName();
 
-        BigDecimal amount = new BigDecimal(amountStr);
+        BigDecimal amount = BigDecimal.valueOf(sessionService.getFlowData(chatId).getAmount());
+        if (amount.signum() <= 0) {
+            logger.warn("No amount in session for chatId {}", chatId);
+            sendTopUpInput(chatId, platform);
+            return;
+        }
         UserBalance balance = userBalanceRepository.findById(chatId)
                 .orElse(UserBalance.builder().chatId(chatId).tickets(0L).balance(BigDecimal.ZERO).build());
 
@@ -511,7 +494,7 @@ public class BonusService {
         messageSender.sendMessage(chatId, userMessage);
 
         sendAdminApprovalRequest(chatId, request);
-        sessionService.setUserState(chatId, "BONUS_MENU");
+        sessionService.setUserState(chatId, SessionState.BONUS_MENU);
         sendBonusMenu(chatId);
     }
 
@@ -574,34 +557,10 @@ public class BonusService {
             return;
         }
 
-        String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-        String sha256Input = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-        String sha256Part = sha256Hex(sha256Input);
-        String md5Input = "summa=" + amount + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-        String md5Part = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Part + md5Part);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Add", userId);
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("cashdeskId", Integer.parseInt(cashdeskId));
-        body.put("lng", lng);
-        body.put("summa", amount);
-        body.put("confirm", confirm);
-        body.put("cardNumber", cardNumber);
-
         try {
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-
-            Object successObj = responseBody != null ? responseBody.get("success") : null;
-            if (successObj == null && responseBody != null) successObj = responseBody.get("Success");
+            Map<String, Object> responseBody = cashdeskClient.deposit(platformData, userId, amount, lng, cardNumber);
 
-            if (Boolean.TRUE.equals(successObj)) {
+            if (CashdeskClient.isSuccess(responseBody)) {
                 request.setStatus(RequestStatus.BONUS_APPROVED);
                 request.setTransactionId(UUID.randomUUID().toString());
                 requestRepository.save(request);
@@ -610,7 +569,7 @@ public class BonusService {
                 sessionService.clearMessageIds(request.getChatId());
                 String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
 
-                BalanceLimit cashdeskBalance = getCashdeskBalance(hash, cashierPass, cashdeskId);
+                BalanceLimit cashdeskBalance = cashdeskBalanceService.recordDeposit(platformData, amount);
                 if (cashdeskBalance == null) {
                     String message = String.format("🆔: %d #Bonus tasdiqlandi ✅ \n\uD83C\uDF10 %s :  %s\n💰 Bonus: %,d so‘m\n\uD83D\uDC64 Foydalanuvchi: `%d` \n\uD83D\uDCDE %s \n\n 📅 [%s]",
                             request.getId(), request.getPlatform(), request.getPlatformUserId(), request.getAmount(), request.getChatId(), number, LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
@@ -823,19 +782,9 @@ public class BonusService {
         logger.info("Credited {} UZS to referrer {} for referredChatId {}", commission, referrerChatId, referredChatId);
     }
 
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes("UTF-8"));
-            return DatatypeConverter.printHexBinary(hash).toLowerCase();
-        } catch (Exception e) {
-            throw new RuntimeException("SHA-256 calculation failed", e);
-        }
-    }
-
     private void sendMainMenu(Long chatId) {
         sessionService.clearSession(chatId);
-        sessionService.setUserState(chatId, "MAIN_MENU");
+        sessionService.setUserState(chatId, SessionState.MAIN_MENU);
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText(languageSessionService.getTranslation(chatId, "message.main_menu_welcome")); // From ShadePaymentBot
@@ -1021,35 +970,4 @@ public class BonusService {
     private boolean isValidUserId(String userId) {
         return userId.matches("\\d+");
     }
-
-    public BalanceLimit getCashdeskBalance(String hash, String cashierPass, String cashdeskId) {
-        RestTemplate restTemplate = new RestTemplate();
-        String baseUrl = "https://partners.servcul.com/CashdeskBotAPI";
-        String dt = ZonedDateTime.now(ZoneOffset.UTC)
-                .format(DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss"));
-
-        // Generate signature
-        String sha256Input = String.format("hash=%s&cashierpass=%s&dt=%s", hash, cashierPass, dt);
-        String sha256Result = sha256Hex(sha256Input);
-        String md5Input = String.format("dt=%s&cashierpass=%s&cashdeskid=%s", dt, cashierPass, cashdeskId);
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result + md5Result);
-
-        // Generate confirm
-        String confirm = DigestUtils.md5DigestAsHex((cashdeskId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-
-        // Build URL
-        String url = String.format("%s/Cashdesk/%s/Balance?confirm=%s&dt=%s", baseUrl, cashdeskId, confirm, dt);
-
-        // Set headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        // Make GET request and extract balance
-        Map<String, Object> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class).getBody();
-        Object balanceObj = response != null ? response.get("Balance") : null;
-        Object limitObj = response != null ? response.get("Limit") : null;
-        return balanceObj != null ? new BalanceLimit(new BigDecimal(balanceObj.toString()), new BigDecimal(limitObj.toString())) : null;
-    }
-}
\ No newline at end of file
+}
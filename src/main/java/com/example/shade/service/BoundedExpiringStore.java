@@ -0,0 +1,212 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.StoreStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * In-memory map with a maximum size and an idle TTL. Entries are kept in access order,
+ * so the least recently used entry is evicted first when the store is full.
+ */
+public class BoundedExpiringStore<K, V> {
+    // Insertion ordered; accesses move the entry to the end themselves, so peek can leave it in place
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+    private final int maxSize;
+    private final long idleTtlMillis;
+    private BiConsumer<K, V> removalListener = (key, value) -> {
+    };
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public BoundedExpiringStore(int maxSize, long idleTtlMillis) {
+        this.maxSize = maxSize;
+        this.idleTtlMillis = idleTtlMillis;
+    }
+
+    /**
+     * Called for entries dropped because of size or TTL, never for explicit removals.
+     */
+    public void setRemovalListener(BiConsumer<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    public V get(K key) {
+        K expiredKey = null;
+        V expiredValue = null;
+        V result = null;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+            } else if (isExpired(entry, System.currentTimeMillis())) {
+                entries.remove(key);
+                expirations++;
+                misses++;
+                expiredKey = key;
+                expiredValue = entry.value;
+            } else {
+                touch(key, entry);
+                hits++;
+                result = entry.value;
+            }
+        }
+        if (expiredKey != null) {
+            removalListener.accept(expiredKey, expiredValue);
+        }
+        return result;
+    }
+
+    /**
+     * Reads an entry without counting towards the hit statistics and without expiring it. The
+     * entry's idle time and eviction order are left as they are.
+     */
+    public synchronized V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public V computeIfAbsent(K key, Function<K, V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        List<Map.Entry<K, V>> evicted;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                touch(key, entry);
+                return entry.value;
+            }
+            value = factory.apply(key);
+            entries.put(key, new Entry<>(value));
+            evicted = evictOverflow();
+        }
+        notifyRemoved(evicted);
+        return value;
+    }
+
+    public void put(K key, V value) {
+        List<Map.Entry<K, V>> evicted;
+        synchronized (this) {
+            entries.remove(key);
+            entries.put(key, new Entry<>(value));
+            evicted = evictOverflow();
+        }
+        notifyRemoved(evicted);
+    }
+
+    public boolean putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Like {@link #putIfAbsent(Object, Object)} but with a known last access time, for entries
+     * restored from elsewhere.
+     */
+    public boolean putIfAbsent(K key, V value, long lastAccess) {
+        List<Map.Entry<K, V>> evicted;
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return false;
+            }
+            Entry<V> entry = new Entry<>(value);
+            entry.lastAccess = lastAccess;
+            entries.put(key, entry);
+            evicted = evictOverflow();
+        }
+        notifyRemoved(evicted);
+        return true;
+    }
+
+    public V remove(K key) {
+        synchronized (this) {
+            Entry<V> entry = entries.remove(key);
+            return entry == null ? null : entry.value;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops every entry idle for longer than the TTL and returns how many were removed.
+     */
+    public int evictExpired() {
+        List<Map.Entry<K, V>> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> next = iterator.next();
+                if (!isExpired(next.getValue(), now)) {
+                    // Access order: everything after this entry was used more recently
+                    break;
+                }
+                iterator.remove();
+                expirations++;
+                expired.add(Map.entry(next.getKey(), next.getValue().value));
+            }
+        }
+        notifyRemoved(expired);
+        return expired.size();
+    }
+
+    public synchronized StoreStats stats() {
+        return new StoreStats(entries.size(), maxSize, hits, misses, evictions, expirations);
+    }
+
+    private List<Map.Entry<K, V>> evictOverflow() {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            iterator.remove();
+            evictions++;
+            evicted.add(Map.entry(eldest.getKey(), eldest.getValue().value));
+        }
+        return evicted;
+    }
+
+    private void touch(K key, Entry<V> entry) {
+        entry.lastAccess = System.currentTimeMillis();
+        entries.remove(key);
+        entries.put(key, entry);
+    }
+
+    private void notifyRemoved(List<Map.Entry<K, V>> removed) {
+        for (Map.Entry<K, V> entry : removed) {
+            removalListener.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.lastAccess > idleTtlMillis;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private long lastAccess;
+
+        private Entry(V value) {
+            this.value = value;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
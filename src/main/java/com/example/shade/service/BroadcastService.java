@@ -1,6 +1,7 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
+import com.example.shade.bot.OutboundMessageQueue;
 import com.example.shade.bot.ShadePaymentBot;
 import com.example.shade.model.BlockedUser;
 import com.example.shade.repository.BlockedUserRepository;
@@ -17,6 +18,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
@@ -53,6 +55,7 @@ public class BroadcastService {
 
         // Create broadcast task
         Runnable broadcastTask = () -> {
+            List<CompletableFuture<Void>> pending = new ArrayList<>(users.size());
             for (BlockedUser user : users) {
                 try {
                     SendMessage message = new SendMessage();
@@ -64,15 +67,23 @@ public class BroadcastService {
                     if (markup != null) {
                         message.setReplyMarkup(markup);
                     }
-                    messageSender.sendMessage(message, user.getChatId());
-                    successCount.incrementAndGet();
-                    logger.info("Broadcast sent to user {}", user.getChatId());
+                    pending.add(messageSender.sendMessage(message, user.getChatId(), OutboundMessageQueue.Priority.BROADCAST)
+                            .thenAccept(messageId -> {
+                                if (messageId != null) {
+                                    successCount.incrementAndGet();
+                                    logger.info("Broadcast sent to user {}", user.getChatId());
+                                } else {
+                                    failureCount.incrementAndGet();
+                                }
+                            }));
                 } catch (Exception e) {
                     failureCount.incrementAndGet();
                     logger.error("Failed to send broadcast to user {}: {}", user.getChatId(), e.getMessage());
                 }
             }
-            logger.info("Broadcast completed: {} successful, {} failed", successCount.get(), failureCount.get());
+            // Messages are paced by the outbound queue; report once all of them are through
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).whenComplete((result, e) ->
+                    logger.info("Broadcast completed: {} successful, {} failed", successCount.get(), failureCount.get()));
         };
 
         // Schedule or execute immediately
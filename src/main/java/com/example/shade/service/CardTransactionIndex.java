@@ -0,0 +1,76 @@
+package com.example.shade.service;
+
+import com.example.shade.model.ProviderTransaction;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Unmatched incoming card transactions of the recent window, keyed by admin card and amount,
+ * so a payment check is a map lookup instead of a provider call.
+ */
+@Component
+public class CardTransactionIndex {
+
+    private final Map<Key, Deque<ProviderTransaction>> transactions = new HashMap<>();
+    private int size;
+
+    public synchronized void add(ProviderTransaction transaction) {
+        transactions.computeIfAbsent(new Key(transaction.getAdminCardId(), transaction.getAmount()), key -> new ArrayDeque<>())
+                .addLast(transaction);
+        size++;
+    }
+
+    /**
+     * Returns the oldest unmatched transaction of the card with exactly this amount made at or after {@code since}.
+     */
+    public synchronized Optional<ProviderTransaction> find(Long adminCardId, long amount, LocalDateTime since) {
+        Deque<ProviderTransaction> candidates = transactions.get(new Key(adminCardId, amount));
+        if (candidates == null) {
+            return Optional.empty();
+        }
+        for (ProviderTransaction transaction : candidates) {
+            if (transaction.getMatchedRequestId() == null && !transaction.getTransactionTime().isBefore(since)) {
+                return Optional.of(transaction);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized void remove(ProviderTransaction transaction) {
+        Key key = new Key(transaction.getAdminCardId(), transaction.getAmount());
+        Deque<ProviderTransaction> candidates = transactions.get(key);
+        if (candidates != null && candidates.remove(transaction)) {
+            size--;
+            if (candidates.isEmpty()) {
+                transactions.remove(key);
+            }
+        }
+    }
+
+    public synchronized void evictOlderThan(LocalDateTime cutoff) {
+        Iterator<Deque<ProviderTransaction>> buckets = transactions.values().iterator();
+        while (buckets.hasNext()) {
+            Deque<ProviderTransaction> candidates = buckets.next();
+            int before = candidates.size();
+            candidates.removeIf(transaction -> transaction.getTransactionTime().isBefore(cutoff));
+            size -= before - candidates.size();
+            if (candidates.isEmpty()) {
+                buckets.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private record Key(Long adminCardId, long amount) {
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.BalanceLimit;
+import com.example.shade.model.Platform;
+import com.example.shade.repository.PlatformRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Last known balance and limit of every platform's cashdesk. Deposits and payouts made by the bot
+ * are applied locally right away, and all cashdesks are re-read in parallel in the background to
+ * pick up everything else.
+ */
+@Service
+@RequiredArgsConstructor
+public class CashdeskBalanceService {
+    private static final Logger logger = LoggerFactory.getLogger(CashdeskBalanceService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private final PlatformRepository platformRepository;
+    private final CashdeskClient cashdeskClient;
+
+    @Value("${cashdesk.balance.refresh-threads:4}")
+    private int refreshThreads;
+
+    @Value("${cashdesk.balance.refresh-timeout-ms:20000}")
+    private long refreshTimeoutMs;
+
+    private ThreadPoolExecutor refreshExecutor;
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // Bumped on every local change, so a fetch started before the change doesn't overwrite it
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cashdesk-balance-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Applies a deposit the bot just made and returns the resulting balance. The cashdesk is only
+     * called when its balance is not known yet.
+     */
+    public BalanceLimit recordDeposit(Platform platform, long amount) {
+        return applyDelta(platform, BigDecimal.valueOf(amount).negate());
+    }
+
+    /**
+     * Applies a payout the bot just made. Nothing is fetched when the balance is not known yet.
+     */
+    public void recordPayout(Platform platform, BigDecimal amount) {
+        adjust(platform, amount);
+    }
+
+    /**
+     * Forgets the platform's balance, after its credentials were edited or it was deleted.
+     */
+    public void invalidate(Long platformId) {
+        snapshots.compute(platformId, (id, old) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        });
+    }
+
+    /**
+     * Starts a fetch per cashdesk and returns; results are applied as they arrive, so a slow
+     * cashdesk never holds a scheduler thread. A round still running skips the next one.
+     */
+    @Scheduled(fixedDelayString = "${cashdesk.balance.refresh-ms:60000}")
+    public void refreshAll() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            for (Platform platform : platformRepository.findAll()) {
+                if (!hasCredentials(platform)) {
+                    continue;
+                }
+                long startVersion = version(platform.getId());
+                pending.add(CompletableFuture.supplyAsync(() -> cashdeskClient.getBalance(platform), refreshExecutor)
+                        .orTimeout(refreshTimeoutMs, TimeUnit.MILLISECONDS)
+                        .whenComplete((balance, e) -> applyRefresh(platform, startVersion, balance, e)));
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .whenComplete((result, e) -> refreshing.set(false));
+        } catch (RuntimeException e) {
+            refreshing.set(false);
+            throw e;
+        }
+    }
+
+    private void applyRefresh(Platform platform, long startVersion, BalanceLimit balance, Throwable e) {
+        if (e == null) {
+            if (balance != null && !store(platform.getId(), startVersion, balance)) {
+                logger.debug("Skipping cashdesk balance of platform {} fetched before a local change", platform.getName());
+            }
+            return;
+        }
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        String error = cause instanceof TimeoutException ? "timed out" : cause.getMessage();
+        snapshots.compute(platform.getId(), (id, old) -> old == null
+                ? new Snapshot(null, null, error)
+                : new Snapshot(old.balance(), old.refreshedAt(), error));
+        logger.warn("Failed to refresh cashdesk balance of platform {}: {}", platform.getName(), error);
+    }
+
+    public List<Map<String, Object>> getBalances() {
+        List<Map<String, Object>> balances = new ArrayList<>();
+        for (Platform platform : platformRepository.findAll()) {
+            Snapshot snapshot = snapshots.get(platform.getId());
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", platform.getId());
+            entry.put("name", platform.getName());
+            entry.put("currency", platform.getCurrency());
+            entry.put("balance", snapshot != null && snapshot.balance() != null ? snapshot.balance().getBalance() : null);
+            entry.put("limit", snapshot != null && snapshot.balance() != null ? snapshot.balance().getLimit() : null);
+            entry.put("refreshedAt", snapshot != null ? snapshot.refreshedAt() : null);
+            entry.put("error", snapshot != null ? snapshot.error() : null);
+            balances.add(entry);
+        }
+        return balances;
+    }
+
+    private BalanceLimit applyDelta(Platform platform, BigDecimal delta) {
+        Snapshot updated = adjust(platform, delta);
+        if (updated != null && updated.balance() != null) {
+            return copy(updated.balance());
+        }
+        long version = version(platform.getId());
+        BalanceLimit balance = cashdeskClient.getBalance(platform);
+        if (balance != null) {
+            store(platform.getId(), version, balance);
+            return copy(balance);
+        }
+        return null;
+    }
+
+    private Snapshot adjust(Platform platform, BigDecimal delta) {
+        return snapshots.compute(platform.getId(), (id, old) -> {
+            versions.merge(id, 1L, Long::sum);
+            return old == null || old.balance() == null ? old
+                    : new Snapshot(new BalanceLimit(old.balance().getBalance().add(delta), old.balance().getLimit().add(delta)),
+                    old.refreshedAt(), old.error());
+        });
+    }
+
+    /**
+     * Stores a fetched balance unless the platform changed locally after the fetch started.
+     */
+    private boolean store(Long platformId, long startVersion, BalanceLimit balance) {
+        boolean[] stored = new boolean[1];
+        snapshots.compute(platformId, (id, old) -> {
+            if (version(id) != startVersion) {
+                return old;
+            }
+            stored[0] = true;
+            return new Snapshot(balance, LocalDateTime.now(ZONE), null);
+        });
+        return stored[0];
+    }
+
+    private long version(Long platformId) {
+        return versions.getOrDefault(platformId, 0L);
+    }
+
+    private static boolean hasCredentials(Platform platform) {
+        return platform.getApiKey() != null && !platform.getApiKey().isEmpty()
+                && platform.getPassword() != null && !platform.getPassword().isEmpty()
+                && platform.getWorkplaceId() != null && !platform.getWorkplaceId().isEmpty();
+    }
+
+    // BalanceLimit is mutable, callers get their own instance
+    private static BalanceLimit copy(BalanceLimit balance) {
+        return new BalanceLimit(balance.getBalance(), balance.getLimit());
+    }
+
+    private record Snapshot(BalanceLimit balance, LocalDateTime refreshedAt, String error) {
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.BalanceLimit;
+import com.example.shade.model.Platform;
+import com.example.shade.model.UserProfile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typed calls of the partners CashdeskBotAPI shared by top-up, withdraw and bonus flows. HTTP errors
+ * are thrown to the caller as {@link org.springframework.web.client.RestClientException}s.
+ */
+@Service
+@RequiredArgsConstructor
+public class CashdeskClient {
+    private static final Logger logger = LoggerFactory.getLogger(CashdeskClient.class);
+    private static final String BASE_URL = "https://partners.servcul.com/CashdeskBotAPI";
+    private static final DateTimeFormatter DT_FORMATTER = DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss");
+
+    private final RestTemplate restTemplate;
+    private final CashdeskProfileCache profileCache;
+
+    @Value("${cashdesk.prefetch.pool-size:4}")
+    private int prefetchPoolSize;
+
+    @Value("${cashdesk.prefetch.queue-capacity:50}")
+    private int prefetchQueueCapacity;
+
+    @Value("${cashdesk.prefetch.wait-ms:3000}")
+    private long prefetchWaitMs;
+
+    private ThreadPoolExecutor prefetchExecutor;
+    private final Map<UserKey, CompletableFuture<UserProfile>> prefetches = new ConcurrentHashMap<>();
+    private final AtomicLong prefetchesStarted = new AtomicLong();
+    private final AtomicLong prefetchesDropped = new AtomicLong();
+    private final Map<Credentials, CashdeskSigner> signers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        prefetchExecutor = new ThreadPoolExecutor(prefetchPoolSize, prefetchPoolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(prefetchQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cashdesk-prefetch-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns null when the cashdesk does not know the user. Answers are cached, see
+     * {@link CashdeskProfileCache}, and a lookup of a user being prefetched waits for that call.
+     */
+    public UserProfile findUser(Platform platform, String userId) {
+        CashdeskSigner signer = signer(platform);
+        CashdeskProfileCache.Cached cached = profileCache.get(signer.getCashdeskId(), userId);
+        if (cached != null) {
+            return cached.profile();
+        }
+        CompletableFuture<UserProfile> prefetch = prefetches.get(new UserKey(signer.getCashdeskId(), userId));
+        if (prefetch != null) {
+            try {
+                return prefetch.get(prefetchWaitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                // The prefetch failed, was dropped or is stuck in the queue, look the user up ourselves
+            }
+        }
+        return loadUser(signer, userId);
+    }
+
+    /**
+     * Looks the users up in the background so a following {@link #findUser} is answered from the
+     * cache. Users that are cached or already being fetched are skipped, and nothing is fetched
+     * when the prefetch pool is saturated.
+     */
+    public void prefetchUsers(Platform platform, Collection<String> userIds) {
+        if (isBlank(platform.getApiKey()) || isBlank(platform.getPassword()) || isBlank(platform.getWorkplaceId())) {
+            return;
+        }
+        CashdeskSigner signer = signer(platform);
+        for (String userId : userIds) {
+            if (userId == null || profileCache.contains(signer.getCashdeskId(), userId)) {
+                continue;
+            }
+            UserKey key = new UserKey(signer.getCashdeskId(), userId);
+            CompletableFuture<UserProfile> future = new CompletableFuture<>();
+            if (prefetches.putIfAbsent(key, future) != null) {
+                continue;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        future.complete(loadUser(signer, userId));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                        logger.warn("Prefetch of user {} on cashdesk {} failed: {}", userId, key.cashdeskId(), e.getMessage());
+                    } finally {
+                        prefetches.remove(key, future);
+                    }
+                });
+                prefetchesStarted.incrementAndGet();
+            } catch (RejectedExecutionException e) {
+                prefetches.remove(key, future);
+                future.cancel(false);
+                prefetchesDropped.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getPrefetchStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("started", prefetchesStarted.get());
+        stats.put("dropped", prefetchesDropped.get());
+        stats.put("inFlight", prefetches.size());
+        stats.put("active", prefetchExecutor.getActiveCount());
+        stats.put("queued", prefetchExecutor.getQueue().size());
+        return stats;
+    }
+
+    private UserProfile loadUser(CashdeskSigner signer, String userId) {
+        String url = String.format("%s/Users/%s?confirm=%s&cashdeskId=%s",
+                BASE_URL, userId, signer.confirm(userId), signer.getCashdeskId());
+        UserProfile profile;
+        try {
+            profile = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(signHeaders(signer.userSign(userId))), UserProfile.class)
+                    .getBody();
+        } catch (HttpClientErrorException.NotFound e) {
+            profile = null;
+        }
+        if (profile != null && profile.getUserId() != null && profile.getName() != null && !profile.getName().isEmpty()) {
+            profileCache.put(signer.getCashdeskId(), userId, profile);
+        } else {
+            profileCache.putNotFound(signer.getCashdeskId(), userId);
+        }
+        return profile;
+    }
+
+    public Map<String, Object> deposit(Platform platform, String userId, long summa, String lng, String cardNumber) {
+        CashdeskSigner signer = signer(platform);
+        Map<String, Object> body = new HashMap<>();
+        body.put("cashdeskId", Integer.parseInt(signer.getCashdeskId()));
+        body.put("lng", lng);
+        body.put("summa", summa);
+        body.put("confirm", signer.confirm(userId));
+        body.put("cardNumber", cardNumber);
+        return post(String.format("%s/Deposit/%s/Add", BASE_URL, userId), body, signer.depositSign(userId, lng, summa));
+    }
+
+    public Map<String, Object> payout(Platform platform, String userId, String code, String lng) {
+        CashdeskSigner signer = signer(platform);
+        Map<String, Object> body = new HashMap<>();
+        body.put("cashdeskId", Integer.parseInt(signer.getCashdeskId()));
+        body.put("lng", lng);
+        body.put("code", code);
+        body.put("confirm", signer.confirm(userId));
+        return post(String.format("%s/Deposit/%s/Payout", BASE_URL, userId), body, signer.payoutSign(userId, lng, code));
+    }
+
+    @SuppressWarnings("unchecked")
+    public BalanceLimit getBalance(Platform platform) {
+        CashdeskSigner signer = signer(platform);
+        String dt = ZonedDateTime.now(ZoneOffset.UTC).format(DT_FORMATTER);
+        String url = String.format("%s/Cashdesk/%s/Balance?confirm=%s&dt=%s",
+                BASE_URL, signer.getCashdeskId(), signer.balanceConfirm(), dt);
+        Map<String, Object> response = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(signHeaders(signer.balanceSign(dt))), Map.class).getBody();
+        Object balanceObj = response != null ? response.get("Balance") : null;
+        Object limitObj = response != null ? response.get("Limit") : null;
+        return balanceObj != null ? new BalanceLimit(new BigDecimal(balanceObj.toString()), new BigDecimal(limitObj.toString())) : null;
+    }
+
+    /**
+     * The API answers with either "success" or "Success".
+     */
+    public static boolean isSuccess(Map<String, Object> responseBody) {
+        if (responseBody == null) {
+            return false;
+        }
+        Object success = responseBody.get("success");
+        if (success == null) {
+            success = responseBody.get("Success");
+        }
+        return Boolean.TRUE.equals(success);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> post(String url, Map<String, Object> body, String sign) {
+        HttpHeaders headers = signHeaders(sign);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(body, headers), Map.class).getBody();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private HttpHeaders signHeaders(String sign) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("sign", sign);
+        return headers;
+    }
+
+    private CashdeskSigner signer(Platform platform) {
+        // Keyed by the credentials themselves, so an edited platform gets a fresh signer
+        Credentials credentials = new Credentials(platform.getApiKey(), platform.getPassword(), platform.getWorkplaceId());
+        return signers.computeIfAbsent(credentials, c -> new CashdeskSigner(c.hash(), c.cashierPass(), c.cashdeskId()));
+    }
+
+    private record UserKey(String cashdeskId, String userId) {
+    }
+
+    private record Credentials(String hash, String cashierPass, String cashdeskId) {
+    }
+}
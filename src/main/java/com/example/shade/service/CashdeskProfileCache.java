@@ -0,0 +1,101 @@
+package com.example.shade.service;
+
+import com.example.shade.model.UserProfile;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recently looked up cashdesk user profiles per cashdesk and user ID. Entries live for a fixed
+ * time from the lookup, not from the last read, so a renamed user shows up after one TTL. IDs the
+ * cashdesk did not know are remembered for a shorter time.
+ */
+@Component
+public class CashdeskProfileCache {
+
+    @Value("${cashdesk.profile-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${cashdesk.profile-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${cashdesk.profile-cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private BoundedExpiringStore<Key, Cached> store;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        store = new BoundedExpiringStore<>(maxSize, TimeUnit.SECONDS.toMillis(Math.max(ttlSeconds, negativeTtlSeconds)));
+    }
+
+    /**
+     * Returns null on a miss. A hit for an unknown ID returns a cached entry without a profile.
+     */
+    public Cached get(String cashdeskId, String userId) {
+        Key key = new Key(cashdeskId, userId);
+        Cached cached = store.peek(key);
+        if (cached == null || cached.expiresAt() < System.currentTimeMillis()) {
+            if (cached != null) {
+                store.remove(key);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        (cached.profile() != null ? hits : negativeHits).incrementAndGet();
+        return cached;
+    }
+
+    /**
+     * Like {@link #get} but without counting towards the hit statistics.
+     */
+    public boolean contains(String cashdeskId, String userId) {
+        Cached cached = store.peek(new Key(cashdeskId, userId));
+        return cached != null && cached.expiresAt() >= System.currentTimeMillis();
+    }
+
+    public void put(String cashdeskId, String userId, UserProfile profile) {
+        store.put(new Key(cashdeskId, userId), new Cached(profile, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+    }
+
+    public void putNotFound(String cashdeskId, String userId) {
+        store.put(new Key(cashdeskId, userId), new Cached(null, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeTtlSeconds)));
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        store.evictExpired();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long negativeHitCount = negativeHits.get();
+        long missCount = misses.get();
+        long total = hitCount + negativeHitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", store.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hitCount);
+        stats.put("negativeHits", negativeHitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (hitCount + negativeHitCount) / total);
+        stats.put("evictions", store.stats().getEvictions());
+        return stats;
+    }
+
+    public record Cached(UserProfile profile, long expiresAt) {
+    }
+
+    private record Key(String cashdeskId, String userId) {
+    }
+}
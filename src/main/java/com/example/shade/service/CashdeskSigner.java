@@ -0,0 +1,118 @@
+package com.example.shade.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds the confirm and sign values of CashdeskBotAPI calls for one cashdesk. The parts that only
+ * depend on the cashdesk credentials are encoded once, digests are reused per thread and hex is
+ * written straight into byte arrays.
+ */
+final class CashdeskSigner {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> newDigest("MD5"));
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> newDigest("SHA-256"));
+    private static final byte[] USERID = bytes("userid=");
+    private static final byte[] AND_USERID = bytes("&userid=");
+    private static final byte[] SUMMA = bytes("summa=");
+    private static final byte[] CODE = bytes("code=");
+    private static final byte[] DT = bytes("dt=");
+
+    private final String cashdeskId;
+    private final byte[] confirmSuffix;          // :{hash}
+    private final byte[] hashUserIdPrefix;       // hash={hash}&userid=
+    private final byte[] cashdeskIdSuffix;       // &cashdeskid={cashdeskId}
+    private final byte[] cashierPassHashSuffix;  // &cashierpass={pass}&hash={hash}
+    private final byte[] hashLngPrefix;          // hash={hash}&lng=
+    private final byte[] cashierPassCashdeskSuffix; // &cashierpass={pass}&cashdeskid={cashdeskId}
+    private final byte[] balancePrefix;          // hash={hash}&cashierpass={pass}&dt=
+    private final String balanceConfirm;
+
+    CashdeskSigner(String hash, String cashierPass, String cashdeskId) {
+        this.cashdeskId = cashdeskId;
+        this.confirmSuffix = bytes(":" + hash);
+        this.hashUserIdPrefix = bytes("hash=" + hash + "&userid=");
+        this.cashdeskIdSuffix = bytes("&cashdeskid=" + cashdeskId);
+        this.cashierPassHashSuffix = bytes("&cashierpass=" + cashierPass + "&hash=" + hash);
+        this.hashLngPrefix = bytes("hash=" + hash + "&lng=");
+        this.cashierPassCashdeskSuffix = bytes("&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId);
+        this.balancePrefix = bytes("hash=" + hash + "&cashierpass=" + cashierPass + "&dt=");
+        this.balanceConfirm = string(md5Hex(bytes(cashdeskId), confirmSuffix));
+    }
+
+    String getCashdeskId() {
+        return cashdeskId;
+    }
+
+    String confirm(String userId) {
+        return string(md5Hex(bytes(userId), confirmSuffix));
+    }
+
+    String userSign(String userId) {
+        byte[] user = bytes(userId);
+        return sign(sha256Hex(hashUserIdPrefix, user, cashdeskIdSuffix), md5Hex(USERID, user, cashierPassHashSuffix));
+    }
+
+    String depositSign(String userId, String lng, long summa) {
+        return sign(lngPart(userId, lng), md5Hex(SUMMA, bytes(Long.toString(summa)), cashierPassCashdeskSuffix));
+    }
+
+    String payoutSign(String userId, String lng, String code) {
+        return sign(lngPart(userId, lng), md5Hex(CODE, bytes(code), cashierPassCashdeskSuffix));
+    }
+
+    String balanceSign(String dt) {
+        byte[] time = bytes(dt);
+        return sign(sha256Hex(balancePrefix, time), md5Hex(DT, time, cashierPassCashdeskSuffix));
+    }
+
+    String balanceConfirm() {
+        return balanceConfirm;
+    }
+
+    private byte[] lngPart(String userId, String lng) {
+        return sha256Hex(hashLngPrefix, bytes(lng), AND_USERID, bytes(userId));
+    }
+
+    private static String sign(byte[] shaPart, byte[] md5Part) {
+        return string(sha256Hex(shaPart, md5Part));
+    }
+
+    private static byte[] md5Hex(byte[]... parts) {
+        return digestHex(MD5.get(), parts);
+    }
+
+    private static byte[] sha256Hex(byte[]... parts) {
+        return digestHex(SHA256.get(), parts);
+    }
+
+    private static byte[] digestHex(MessageDigest digest, byte[]... parts) {
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        byte[] hash = digest.digest(); // also resets the digest for the next call on this thread
+        byte[] hex = new byte[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0x0f];
+        }
+        return hex;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] hex) {
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " algorithm not available", e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.shade.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal count-based circuit breaker. Opens after a run of consecutive failures, rejects calls
+ * while open, then lets a single probe through and closes again if it succeeds.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long rejectedCalls;
+    private long totalFailures;
+    private String lastError;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure(String error) {
+        totalFailures++;
+        lastError = error;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("name", name);
+        snapshot.put("state", state.name());
+        snapshot.put("consecutiveFailures", consecutiveFailures);
+        snapshot.put("totalFailures", totalFailures);
+        snapshot.put("rejectedCalls", rejectedCalls);
+        snapshot.put("lastError", lastError);
+        if (state == State.OPEN) {
+            snapshot.put("retryInMs", Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAt)));
+        }
+        return snapshot;
+    }
+}
@@ -30,7 +30,7 @@ public class CommonService {
     private final HizmatRequestRepository requestRepository;
     private final PlatformRepository platformRepository;
     private final MessageSender messageSender;
-    private final RestTemplate restTemplate = new RestTemplate() ;
+    private final RestTemplate restTemplate;
 
     public void sendPlatformSelection(Long chatId, String prefix) {
         SendMessage message = new SendMessage();
@@ -53,8 +53,8 @@ public class CommonService {
 //            UserProfile profile = response.getBody();
 //            if (profile != null && profile.get() != null) {
 //                String fullName = formatFullName(profile);
-//                sessionService.setUserData(chatId, "platformUserId", userId);
-//                sessionService.setUserData(chatId, "fullName", fullName);
+//                sessionService.getFlowData(chatId).setPlatformUserId(userId);
+//                sessionService.getFlowData(chatId).setFullName(fullName);
 //                sessionService.setUserState(chatId, prefix + "_APPROVE_USER");
 //                sendUserApproval(chatId, fullName, userId, prefix);
 //            } else {
@@ -76,7 +76,7 @@ public class CommonService {
         message.setChatId(chatId);
         if (!recentRequests.isEmpty()) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
+            sessionService.getFlowData(chatId).setPlatformUserId(latestRequest.getPlatformUserId());
             message.setText("Sizning so‘nggi ID: " + latestRequest.getPlatformUserId() + "\nShu IDni ishlatasizmi yoki yangi ID kiriting:");
             message.setReplyMarkup(createSavedIdKeyboard(recentRequests, prefix));
         } else {
@@ -93,7 +93,7 @@ public class CommonService {
         message.setChatId(chatId);
         if (!recentRequests.isEmpty() && recentRequests.get(0).getCardNumber() != null) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "cardNumber", latestRequest.getCardNumber());
+            sessionService.getFlowData(chatId).setCardNumber(latestRequest.getCardNumber());
             message.setText("F.I.O: " + fullName + "\nSo‘nggi karta: " + latestRequest.getCardNumber() + "\nShu kartani ishlatasizmi yoki yangi karta raqamini kiriting:");
             message.setReplyMarkup(createSavedCardKeyboard(recentRequests, prefix));
         } else {
@@ -1,18 +1,34 @@
 package com.example.shade.service;
 
+import com.example.shade.config.HttpClientMetrics;
+import com.example.shade.dto.HumoTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
-import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.net.URI;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Date-8/10/2025
@@ -22,43 +38,122 @@ import java.util.Map;
 @Service
 @RequiredArgsConstructor
 public class HumoService {
-    private final RestTemplate restTemplate  = new RestTemplate();
+    private static final Logger logger = LoggerFactory.getLogger(HumoService.class);
 
-    public ResponseEntity<Object> forwardRequest(String path, HttpMethod method, HttpServletRequest request) {
-        String targetUrl = "http://localhost:2805" + path;
-        HttpHeaders headers = new HttpHeaders();
+    // Connection-level headers are not forwarded, the client and the container set their own
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "host", "content-length");
+
+    private final HumoTransactionIndex humoTransactionIndex;
+    private final PoolingHttpClientConnectionManager httpConnectionManager;
+    private final HttpClientMetrics httpClientMetrics;
+    private final RestTemplate restTemplate;
+
+    @Value("${humo.agent.base-url:http://localhost:2805}")
+    private String agentBaseUrl;
+
+    @Value("${humo.proxy.response-timeout-ms:15000}")
+    private long responseTimeoutMs;
+
+    private CloseableHttpClient proxyClient;
+
+    @PostConstruct
+    public void init() {
+        // Shares the pool with the other integrations but passes bodies and redirects through untouched
+        proxyClient = HttpClients.custom()
+                .setConnectionManager(httpConnectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .build())
+                .disableRedirectHandling()
+                .disableContentCompression()
+                .build();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (proxyClient != null) {
+            proxyClient.close();
+        }
+    }
+
+    /**
+     * Proxies the request to the Humo agent. Request and response bodies are streamed as bytes,
+     * nothing is buffered or re-encoded.
+     */
+    public void forwardRequest(String path, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ClassicRequestBuilder upstream = ClassicRequestBuilder.create(request.getMethod()).setUri(agentBaseUrl + path);
         Enumeration<String> headerNames = request.getHeaderNames();
         while (headerNames.hasMoreElements()) {
             String headerName = headerNames.nextElement();
-            if (!headerName.equalsIgnoreCase("Authorization")) {
-                headers.add(headerName, request.getHeader(headerName));
+            if (headerName.equalsIgnoreCase("Authorization") || HOP_BY_HOP_HEADERS.contains(headerName.toLowerCase())) {
+                continue;
+            }
+            Enumeration<String> values = request.getHeaders(headerName);
+            while (values.hasMoreElements()) {
+                upstream.addHeader(headerName, values.nextElement());
             }
         }
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > 0 || request.getHeader("Transfer-Encoding") != null) {
+            upstream.setEntity(new InputStreamEntity(request.getInputStream(), contentLength, null));
+        }
 
-        String body = null;
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
-            BufferedReader reader = request.getReader();
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            body = sb.toString();
+            failed = proxyClient.execute(upstream.build(), upstreamResponse -> {
+                response.setStatus(upstreamResponse.getCode());
+                for (Header header : upstreamResponse.getHeaders()) {
+                    String name = header.getName().toLowerCase();
+                    if (!HOP_BY_HOP_HEADERS.contains(name) || name.equals("content-length")) {
+                        response.addHeader(header.getName(), header.getValue());
+                    }
+                }
+                HttpEntity entity = upstreamResponse.getEntity();
+                if (entity != null) {
+                    entity.writeTo(response.getOutputStream());
+                }
+                response.flushBuffer();
+                return upstreamResponse.getCode() >= 500;
+            });
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Failed to read request body");
+            logger.error("Failed to forward {} {} to Humo agent: {}", request.getMethod(), path, e.getMessage());
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+                response.getWriter().write("Failed to forward request");
+            }
+        } finally {
+            httpClientMetrics.record(URI.create(agentBaseUrl).getHost(), System.nanoTime() - start, failed);
         }
+    }
 
-        HttpEntity<String> entity = new HttpEntity<>(body.isEmpty() ? null : body, headers);
-        try {
-            ResponseEntity<Object> response = restTemplate.exchange(targetUrl, method, entity, Object.class);
-            return ResponseEntity.status(response.getStatusCode()).body(response.getBody());
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to forward request");
-        }
+    /**
+     * Takes the pushed transaction for the payment, or returns null. Hand it back with
+     * {@link #returnPayment} when the request ends up not approved.
+     */
+    public HumoTransaction takePayment(Long uniqueAmount) {
+        return humoTransactionIndex.take(uniqueAmount);
+    }
+
+    public void returnPayment(HumoTransaction transaction) {
+        humoTransactionIndex.putBack(transaction);
     }
 
+    /**
+     * Checks a payment {@link #takePayment} did not find. The miss is trusted while the agent keeps
+     * pushing, otherwise the agent is asked directly.
+     */
     public boolean verifyPaymentAmount(Long uniqueAmount) {
-        String targetUrl = "http://localhost:2805/last_transactions?amount=" + uniqueAmount;
+        if (humoTransactionIndex.isFresh()) {
+            return false;
+        }
+        // The agent stopped pushing, ask it directly
+        String targetUrl = agentBaseUrl + "/last_transactions?amount=" + uniqueAmount;
         try {
             ResponseEntity<Map> response = restTemplate.getForEntity(targetUrl, Map.class);
             Map<String, Object> body = response.getBody();
@@ -71,4 +166,4 @@ public class HumoService {
             return false;
         }
     }
-}
\ No newline at end of file
+}
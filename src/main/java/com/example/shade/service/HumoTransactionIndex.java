@@ -0,0 +1,150 @@
+package com.example.shade.service;
+
+import com.example.shade.dto.HumoTransaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incoming Humo transactions pushed by the local Humo agent, keyed by amount and kept for the
+ * matching window. A payment check takes the oldest transaction with the amount, so one transfer
+ * never confirms two requests.
+ */
+@Component
+public class HumoTransactionIndex {
+
+    @Value("${humo.match.window-minutes:15}")
+    private long windowMinutes;
+
+    @Value("${humo.ingest.fresh-ms:60000}")
+    private long freshMs;
+
+    private final Map<Long, Deque<Entry>> transactions = new HashMap<>();
+    // Ids seen in the window, so a transaction pushed twice is stored once
+    private final Map<String, Long> seenIds = new HashMap<>();
+    private int size;
+    private long received;
+    private long matched;
+    private long rejected;
+    private volatile long lastPushAt;
+
+    /**
+     * Stores the pushed transactions and returns how many were new. Transactions without an id are
+     * dropped, since a repeated push of them could not be told apart from a second transfer. An
+     * empty push only marks the agent as alive.
+     */
+    public synchronized int addAll(Iterable<HumoTransaction> pushed) {
+        long now = System.currentTimeMillis();
+        lastPushAt = now;
+        int added = 0;
+        for (HumoTransaction transaction : pushed) {
+            if (transaction == null || transaction.getAmount() == null || transaction.getAmount() <= 0) {
+                continue;
+            }
+            if (transaction.getId() == null || transaction.getId().isBlank()) {
+                rejected++;
+                continue;
+            }
+            long time = transaction.getTimestamp() != null ? transaction.getTimestamp() : now;
+            if (time < windowStart(now)) {
+                continue;
+            }
+            if (seenIds.putIfAbsent(transaction.getId(), time) != null) {
+                continue;
+            }
+            transactions.computeIfAbsent(transaction.getAmount(), amount -> new ArrayDeque<>())
+                    .addLast(new Entry(transaction.getId(), time));
+            size++;
+            added++;
+        }
+        received += added;
+        return added;
+    }
+
+    /**
+     * Removes and returns the oldest transaction of exactly this amount from the window, or null.
+     * It goes back with {@link #putBack} if the payment it was taken for is not approved.
+     */
+    public synchronized HumoTransaction take(long amount) {
+        Deque<Entry> candidates = transactions.get(amount);
+        if (candidates == null) {
+            return null;
+        }
+        long windowStart = windowStart(System.currentTimeMillis());
+        Entry entry;
+        while ((entry = candidates.pollFirst()) != null) {
+            size--;
+            if (entry.time() >= windowStart) {
+                break;
+            }
+        }
+        if (candidates.isEmpty()) {
+            transactions.remove(amount);
+        }
+        if (entry == null) {
+            return null;
+        }
+        matched++;
+        return new HumoTransaction(entry.id(), amount, entry.time());
+    }
+
+    public synchronized void putBack(HumoTransaction transaction) {
+        if (transaction.getTimestamp() < windowStart(System.currentTimeMillis())) {
+            return;
+        }
+        // It was the oldest of its amount when taken
+        transactions.computeIfAbsent(transaction.getAmount(), amount -> new ArrayDeque<>())
+                .addFirst(new Entry(transaction.getId(), transaction.getTimestamp()));
+        size++;
+        matched--;
+    }
+
+    /**
+     * True while the agent keeps pushing, so a miss in the index can be trusted.
+     */
+    public boolean isFresh() {
+        return System.currentTimeMillis() - lastPushAt < freshMs;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public synchronized void evictExpired() {
+        long windowStart = windowStart(System.currentTimeMillis());
+        Iterator<Deque<Entry>> buckets = transactions.values().iterator();
+        while (buckets.hasNext()) {
+            Deque<Entry> candidates = buckets.next();
+            int before = candidates.size();
+            candidates.removeIf(entry -> entry.time() < windowStart);
+            size -= before - candidates.size();
+            if (candidates.isEmpty()) {
+                buckets.remove();
+            }
+        }
+        seenIds.values().removeIf(time -> time < windowStart);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexed", size);
+        stats.put("received", received);
+        stats.put("matched", matched);
+        stats.put("rejected", rejected);
+        stats.put("fresh", isFresh());
+        stats.put("lastPushAt", lastPushAt);
+        return stats;
+    }
+
+    private long windowStart(long now) {
+        return now - TimeUnit.MINUTES.toMillis(windowMinutes);
+    }
+
+    private record Entry(String id, long time) {
+    }
+}
@@ -1,16 +1,19 @@
 package com.example.shade.service;
 
+import com.example.shade.dto.StoreStats;
 import com.example.shade.model.Language;
 import com.example.shade.model.UserSession;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Component;
 
 import java.util.Locale;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Date-9/3/2025
@@ -21,11 +24,22 @@ import java.util.concurrent.ConcurrentHashMap;
 @Service
 @RequiredArgsConstructor
 public class LanguageSessionService {
-    private final Map<Long, Language> sessionStore = new ConcurrentHashMap<>();
+    private BoundedExpiringStore<Long, Language> sessionStore;
 
 
     private final MessageSource messageSource;
 
+    @Value("${session.store.max-size:100000}")
+    private int maxSize;
+
+    @Value("${session.store.idle-ttl-minutes:360}")
+    private long idleTtlMinutes;
+
+    @PostConstruct
+    public void init() {
+        sessionStore = new BoundedExpiringStore<>(maxSize, TimeUnit.MINUTES.toMillis(idleTtlMinutes));
+    }
+
 
     public String getTranslation(Long chatId, String textCode) {
         Language language = sessionStore.get(chatId);
@@ -50,4 +64,13 @@ public class LanguageSessionService {
     public void clearSession(Long chatId) {
         sessionStore.remove(chatId);
     }
+
+    public StoreStats getSessionStats() {
+        return sessionStore.stats();
+    }
+
+    @Scheduled(fixedDelayString = "${session.store.sweep-interval-ms:60000}")
+    public void evictExpiredSessions() {
+        sessionStore.evictExpired();
+    }
 }
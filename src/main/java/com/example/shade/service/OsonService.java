@@ -1,40 +1,134 @@
 package com.example.shade.service;
 
+import com.example.shade.config.HttpClientMetrics;
 import com.example.shade.model.AdminCard;
 import com.example.shade.model.OsonConfig;
 import com.example.shade.repository.AdminCardRepository;
 import com.example.shade.repository.OsonConfigRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
 public class OsonService {
     private static final Logger logger = LoggerFactory.getLogger(OsonService.class);
-    private final RestTemplate restTemplate;
+    private final CloseableHttpClient httpClient;
+    private final HttpClientMetrics httpClientMetrics;
     private final OsonConfigRepository osonConfigRepository;
-    private static final DateTimeFormatter OSON_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
-    private String authToken;
+    public static final DateTimeFormatter OSON_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
+    private static final long CARD_ID_MISS_RELOAD_MS = 60_000L;
+    private final Object tokenLock = new Object();
+    private final Object cardIdLock = new Object();
+    private final Map<Long, CardIdCache> cardIdsByConfig = new ConcurrentHashMap<>();
+    private volatile CachedToken cachedToken;
+
+    @Value("${oson.token.max-age-minutes:720}")
+    private long tokenMaxAgeMinutes;
+
+    @Value("${oson.timeout.login-ms:10000}")
+    private long loginTimeoutMs;
+
+    @Value("${oson.timeout.card-list-ms:8000}")
+    private long cardListTimeoutMs;
+
+    @Value("${oson.timeout.history-ms:5000}")
+    private long historyTimeoutMs;
+
+    @Value("${oson.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${oson.retry.base-delay-ms:200}")
+    private long retryBaseDelayMs;
+
+    @Value("${oson.retry.max-delay-ms:2000}")
+    private long retryMaxDelayMs;
+
+    @Value("${oson.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${oson.breaker.open-duration-ms:30000}")
+    private long breakerOpenDurationMs;
+
+    private RestTemplate loginTemplate;
+    private RestTemplate cardListTemplate;
+    private RestTemplate historyTemplate;
+    private RetryPolicy retryPolicy;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void init() {
+        loginTemplate = buildTemplate(loginTimeoutMs);
+        cardListTemplate = buildTemplate(cardListTimeoutMs);
+        historyTemplate = buildTemplate(historyTimeoutMs);
+        retryPolicy = new RetryPolicy(retryMaxAttempts, retryBaseDelayMs, retryMaxDelayMs);
+        circuitBreaker = new CircuitBreaker("oson", breakerFailureThreshold, breakerOpenDurationMs);
+    }
+
+    private RestTemplate buildTemplate(long readTimeoutMs) {
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        RestTemplate template = new RestTemplate(requestFactory);
+        template.getInterceptors().add(httpClientMetrics);
+        return template;
+    }
+
+    public Map<String, Object> getCircuitBreakerStats() {
+        return circuitBreaker.snapshot();
+    }
+
+    /**
+     * Sends one Oson request through the circuit breaker. Timeouts, connection errors and 5xx answers
+     * are retried with backoff up to the attempt budget; 4xx answers are returned to the caller as is.
+     */
+    private ResponseEntity<Map> exchange(RestTemplate template, String url, HttpMethod method, HttpEntity<?> entity, String action) {
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.allowRequest()) {
+                throw new OsonUnavailableException("Oson is unavailable, circuit breaker is open");
+            }
+            try {
+                ResponseEntity<Map> response = template.exchange(url, method, entity, Map.class);
+                circuitBreaker.recordSuccess();
+                return response;
+            } catch (HttpClientErrorException e) {
+                circuitBreaker.recordSuccess();
+                throw e;
+            } catch (HttpServerErrorException | ResourceAccessException e) {
+                circuitBreaker.recordFailure(action + ": " + e.getMessage());
+                if (attempt >= retryPolicy.getMaxAttempts()) {
+                    throw new OsonUnavailableException("Oson " + action + " failed after " + attempt + " attempts: " + e.getMessage(), e);
+                }
+                logger.warn("Oson {} attempt {} failed, retrying: {}", action, attempt, e.getMessage());
+                retryPolicy.sleepBeforeRetry(attempt);
+            }
+        }
+    }
 
     private OsonConfig getConfig() {
         return osonConfigRepository.findByPrimaryConfigTrue()
                 .orElseThrow(() -> new IllegalStateException("Oson configuration not found"));
     }
 
-    private synchronized String login() {
-        OsonConfig config = getConfig();
+    private String login(OsonConfig config) {
         String url = config.getApiUrl() + "/api/user/login";
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -56,12 +150,11 @@ public class OsonService {
         HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
 
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
+            ResponseEntity<Map> response = exchange(loginTemplate, url, HttpMethod.POST, entity, "login");
             Map<String, Object> responseBody = response.getBody();
             if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                authToken = (String) responseBody.get("token");
-                logger.info("Oson login successful, token: {}", authToken);
-                return authToken;
+                logger.info("Oson login successful for config {}", config.getId());
+                return (String) responseBody.get("token");
             } else {
                 logger.error("Oson login failed: {}", responseBody != null ? responseBody.get("errstr") : "No response body");
                 throw new RuntimeException("Oson login failed: " + (responseBody != null ? responseBody.get("errstr") : "Unknown error"));
@@ -69,127 +162,230 @@ public class OsonService {
         } catch (HttpClientErrorException e) {
             logger.error("Oson login HTTP error: {}", e.getMessage());
             throw new RuntimeException("Oson login failed: HTTP " + e.getStatusCode());
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Unexpected error during Oson login: {}", e.getMessage());
             throw new RuntimeException("Oson login failed: " + e.getMessage());
         }
     }
 
-    private String getAuthToken() {
-        return login();
+    /**
+     * Returns the cached token of the config, logging in only if there is none or it is too old.
+     */
+    private String getAuthToken(OsonConfig config) {
+        CachedToken cached = cachedToken;
+        if (cached != null && cached.isValidFor(config, tokenMaxAgeMillis())) {
+            return cached.token();
+        }
+        return refreshToken(config, cached != null ? cached.token() : null);
     }
 
-    private Long getCardIdByNumber(String cardNumber) {
-        OsonConfig config = getConfig();
-        String url = config.getApiUrl() + "/api/user/card_v2";
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        headers.set("token", getAuthToken());
-        headers.set("User-Agent", "Oson/11.4.9 (uz.oson; build:2; iOS 18.5.0) Alamofire/4.9.1");
-        headers.set("Accept-Language", "en-UZ;q=1.0, ru-UZ;q=0.9");
-        headers.set("Accept-Encoding", "gzip;q=1.0, compress;q=0.5");
-        headers.set("Connection", "keep-alive");
+    /**
+     * Replaces a token Oson rejected. Callers that fail with the same stale token at once wait for a single login.
+     */
+    private String refreshToken(OsonConfig config, String staleToken) {
+        synchronized (tokenLock) {
+            CachedToken cached = cachedToken;
+            if (cached != null && cached.isValidFor(config, tokenMaxAgeMillis()) && !cached.token().equals(staleToken)) {
+                return cached.token();
+            }
+            String token = login(config);
+            cachedToken = new CachedToken(config.getId(), token, System.currentTimeMillis());
+            return token;
+        }
+    }
 
-        HttpEntity<Void> entity = new HttpEntity<>(headers);
+    private long tokenMaxAgeMillis() {
+        return tokenMaxAgeMinutes * 60_000L;
+    }
 
+    /**
+     * GETs an Oson endpoint with the cached token and returns the body. A 401 or non-zero errno
+     * refreshes the token and retries once.
+     */
+    private Map<String, Object> getWithToken(OsonConfig config, RestTemplate template, String url, String action) {
+        String token = getAuthToken(config);
+        for (int attempt = 1; ; attempt++) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+            headers.set("token", token);
+            headers.set("User-Agent", "Oson/11.4.9 (uz.oson; build:2; iOS 18.5.0) Alamofire/4.9.1");
+            headers.set("Accept-Language", "en-UZ;q=1.0, ru-UZ;q=0.9");
+            headers.set("Accept-Encoding", "gzip;q=1.0, compress;q=0.5");
+            headers.set("Connection", "keep-alive");
+            try {
+                ResponseEntity<Map> response = exchange(template, url, HttpMethod.GET, new HttpEntity<>(headers), action);
+                Map<String, Object> responseBody = response.getBody();
+                if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
+                    return responseBody;
+                }
+                logger.warn("Oson {} returned errno {}: {}", action,
+                        responseBody != null ? responseBody.get("errno") : null, responseBody != null ? responseBody.get("errstr") : "No response body");
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode().value() != 401) {
+                    throw e;
+                }
+                logger.warn("Oson {} rejected token with HTTP 401", action);
+            }
+            if (attempt == 2) {
+                throw new RuntimeException("Oson " + action + " failed after token refresh");
+            }
+            token = refreshToken(config, token);
+        }
+    }
+
+    /**
+     * Resolves the Oson card id from the cached card list of the config. The list is loaded once and
+     * reloaded when admin cards change, or on a miss if it is older than a minute.
+     */
+    private Long getCardIdByNumber(OsonConfig config, String cardNumber) {
+        String lastDigits = cardNumber.substring(cardNumber.length() - 4);
+        CardIdCache cache = cardIdsByConfig.get(config.getId());
+        if (cache != null && (cache.cardIds().containsKey(lastDigits) || !cache.isOlderThan(CARD_ID_MISS_RELOAD_MS))) {
+            return cache.cardIds().get(lastDigits);
+        }
+        synchronized (cardIdLock) {
+            CardIdCache current = cardIdsByConfig.get(config.getId());
+            if (current == null || current == cache) {
+                current = loadCardIds(config);
+                cardIdsByConfig.put(config.getId(), current);
+            }
+            return current.cardIds().get(lastDigits);
+        }
+    }
+
+    private CardIdCache loadCardIds(OsonConfig config) {
+        String url = config.getApiUrl() + "/api/user/card_v2";
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-            if (response.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                List<Map<String, Object>> cards = (List<Map<String, Object>>) responseBody.get("array");
-                for (Map<String, Object> card : cards) {
-                    String number = (String) card.get("number");
-                    if (number != null && number.endsWith(cardNumber.substring(cardNumber.length() - 4))) {
-                        return Long.valueOf(String.valueOf(card.get("id")));
-                    }
+            Map<String, Object> responseBody = getWithToken(config, cardListTemplate, url, "card list");
+            List<Map<String, Object>> cards = (List<Map<String, Object>>) responseBody.get("array");
+            Map<String, Long> cardIds = new HashMap<>();
+            for (Map<String, Object> card : cards) {
+                String number = (String) card.get("number");
+                if (number != null && number.length() >= 4) {
+                    cardIds.putIfAbsent(number.substring(number.length() - 4), Long.valueOf(String.valueOf(card.get("id"))));
                 }
-                return null;
-            } else {
-                authToken = null;
-                return getCardIdByNumber(cardNumber);
             }
+            logger.info("Loaded {} Oson card ids for config {}", cardIds.size(), config.getId());
+            return new CardIdCache(cardIds, System.currentTimeMillis());
         } catch (HttpClientErrorException e) {
-            if (e.getStatusCode().value() == 401) {
-                authToken = null;
-                return getCardIdByNumber(cardNumber);
+            throw new RuntimeException("Failed to fetch cards: HTTP " + e.getStatusCode() + e.getMessage());
+        }
+    }
+
+    public void invalidateCardIds(Long osonConfigId) {
+        if (osonConfigId != null) {
+            cardIdsByConfig.remove(osonConfigId);
+        }
+    }
+
+    /**
+     * Drops everything cached for the config after its credentials or cards were edited.
+     */
+    public void invalidateConfig(Long osonConfigId) {
+        invalidateCardIds(osonConfigId);
+        synchronized (tokenLock) {
+            CachedToken cached = cachedToken;
+            if (cached != null && Objects.equals(cached.configId(), osonConfigId)) {
+                cachedToken = null;
             }
-            throw new RuntimeException("Failed to fetch cards: HTTP " + e.getStatusCode()+ e.getMessage());
-        } catch (Exception e) {
-            authToken = null;
-            return getCardIdByNumber(cardNumber);
         }
     }
 
+    /**
+     * Returns one page of the admin card's history from the primary config, newest first,
+     * or null if the card is not known to Oson.
+     */
+    public List<Map<String, Object>> fetchCardHistory(String adminCardNumber, int count, int offset) {
+        OsonConfig config = getConfig();
+        Long cardId = getCardIdByNumber(config, adminCardNumber);
+        if (cardId == null) {
+            return null;
+        }
+        return fetchCardHistory(config, cardId, count, offset);
+    }
+
+    private List<Map<String, Object>> fetchCardHistory(OsonConfig config, Long cardId, int count, int offset) {
+        String url = String.format("%s/api/user/card_history?card_id=%d&count=%d&manufacturer=1&offset=%d&version=2",
+                config.getApiUrl(), cardId, count, offset);
+        Map<String, Object> responseBody = getWithToken(config, historyTemplate, url, "card history");
+        List<Map<String, Object>> transactions = (List<Map<String, Object>>) responseBody.get("array");
+        return transactions != null ? transactions : List.of();
+    }
+
     public Map<String, Object> verifyPaymentByAmountAndCard(Long chatId, String platform, String platformUserId, long amount, String userCardNumber, String adminCardId, long uniqueAmount) {
         Map<String, Object> response = new HashMap<>();
         response.put("status", "ERROR");
         response.put("error", "Payment verification failed");
         uniqueAmount = uniqueAmount * 100; // Adjust for Oson API (assuming amount in tiyin)
 
-        Long cardId = getCardIdByNumber(adminCardId);
+        OsonConfig config = getConfig();
+        Long cardId;
+        try {
+            cardId = getCardIdByNumber(config, adminCardId);
+        } catch (OsonUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Failed to resolve Oson card id: {}", e.getMessage());
+            response.put("error", e.getMessage());
+            return response;
+        }
         if (cardId == null) {
             response.put("error", "Admin card not found");
             return response;
         }
 
-        OsonConfig config = getConfig();
-        String url = String.format("%s/api/user/card_history?card_id=%d&count=20&manufacturer=1&offset=0&version=2", config.getApiUrl(), cardId);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        headers.set("token", getAuthToken());
-        headers.set("User-Agent", "Oson/11.4.9 (uz.oson; build:2; iOS 18.5.0) Alamofire/4.9.1");
-        headers.set("Accept-Language", "en-UZ;q=1.0, ru-UZ;q=0.9");
-        headers.set("Accept-Encoding", "gzip;q=1.0, compress;q=0.5");
-        headers.set("Connection", "keep-alive");
+        try {
+            List<Map<String, Object>> transactions = fetchCardHistory(config, cardId, 20, 0);
+            String userCardLastDigits = userCardNumber.substring(userCardNumber.length() - 4);
+            OffsetDateTime now = OffsetDateTime.now();
 
-        HttpEntity<Void> entity = new HttpEntity<>(headers);
+            for (Map<String, Object> transaction : transactions) {
+                long txAmount = Long.parseLong(String.valueOf(transaction.get("amount")));
+                String ts = (String) transaction.get("ts");
+                int status = Integer.parseInt(String.valueOf(transaction.get("status")));
 
-        try {
-            ResponseEntity<Map> apiResponse = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
-            Map<String, Object> responseBody = apiResponse.getBody();
-            if (apiResponse.getStatusCode().is2xxSuccessful() && responseBody != null && "0".equals(String.valueOf(responseBody.get("errno")))) {
-                List<Map<String, Object>> transactions = (List<Map<String, Object>>) responseBody.get("array");
-                String userCardLastDigits = userCardNumber.substring(userCardNumber.length() - 4);
-                OffsetDateTime now = OffsetDateTime.now();
-
-                for (Map<String, Object> transaction : transactions) {
-                    long txAmount = Long.parseLong(String.valueOf(transaction.get("amount")));
-                    String ts = (String) transaction.get("ts");
-                    int status = Integer.parseInt(String.valueOf(transaction.get("status")));
-
-                    if (txAmount == uniqueAmount && status == 1) {
-                        try {
-                            OffsetDateTime txTime = OffsetDateTime.parse(ts, OSON_TIMESTAMP_FORMATTER);
-                            if (txTime.isAfter(now.minusMinutes(15))) {
-                                response.put("status", "SUCCESS");
-                                response.put("transactionId", String.valueOf(transaction.get("id")));
-                                response.put("billId", transaction.get("refnum"));
-                                response.put("payUrl", "");
-                                return response;
-                            }
-                        } catch (DateTimeParseException e) {
-                            logger.error("Failed to parse timestamp '{}': {}", ts, e.getMessage());
-                            response.put("error", "Invalid timestamp format in transaction: " + ts);
+                if (txAmount == uniqueAmount && status == 1) {
+                    try {
+                        OffsetDateTime txTime = OffsetDateTime.parse(ts, OSON_TIMESTAMP_FORMATTER);
+                        if (txTime.isAfter(now.minusMinutes(15))) {
+                            response.put("status", "SUCCESS");
+                            response.put("transactionId", String.valueOf(transaction.get("id")));
+                            response.put("billId", transaction.get("refnum"));
+                            response.put("payUrl", "");
                             return response;
                         }
+                    } catch (DateTimeParseException e) {
+                        logger.error("Failed to parse timestamp '{}': {}", ts, e.getMessage());
+                        response.put("error", "Invalid timestamp format in transaction: " + ts);
+                        return response;
                     }
                 }
-                response.put("error", "No matching payment found");
-            } else {
-                authToken = null;
-                return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
             }
+            response.put("error", "No matching payment found");
+        } catch (OsonUnavailableException e) {
+            // Lets the caller switch to the screenshot flow
+            throw e;
         } catch (HttpClientErrorException e) {
-            if (e.getStatusCode().value() == 401) {
-                authToken = null;
-                return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
-            }
             logger.error("HTTP error fetching card history: {}", e.getMessage());
             response.put("error", "HTTP error: " + e.getStatusCode());
         } catch (Exception e) {
-            authToken = null;
-            return verifyPaymentByAmountAndCard(chatId, platform, platformUserId, amount, userCardNumber, adminCardId, uniqueAmount);
+            logger.error("Error fetching card history: {}", e.getMessage());
+            response.put("error", e.getMessage());
         }
         return response;
     }
-}
\ No newline at end of file
+
+    private record CachedToken(Long configId, String token, long obtainedAt) {
+        private boolean isValidFor(OsonConfig config, long maxAgeMillis) {
+            return Objects.equals(configId, config.getId()) && System.currentTimeMillis() - obtainedAt < maxAgeMillis;
+        }
+    }
+
+    private record CardIdCache(Map<String, Long> cardIds, long loadedAt) {
+        private boolean isOlderThan(long millis) {
+            return System.currentTimeMillis() - loadedAt > millis;
+        }
+    }
+}
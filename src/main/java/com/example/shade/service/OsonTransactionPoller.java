@@ -0,0 +1,315 @@
+package com.example.shade.service;
+
+import com.example.shade.model.AdminCard;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.PaymentSystem;
+import com.example.shade.model.ProviderTransaction;
+import com.example.shade.repository.AdminCardRepository;
+import com.example.shade.repository.ProviderTransactionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pulls new incoming transactions of the primary config's UZCARD admin cards from Oson in the
+ * background, stores them in provider_transaction and keeps the recent ones in
+ * {@link CardTransactionIndex} for payment checks.
+ */
+@Service
+@RequiredArgsConstructor
+public class OsonTransactionPoller {
+    private static final Logger logger = LoggerFactory.getLogger(OsonTransactionPoller.class);
+    public static final String PROVIDER = "OSON";
+    private static final int PAGE_SIZE = 20;
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private final OsonService osonService;
+    private final AdminCardRepository adminCardRepository;
+    private final ProviderTransactionRepository providerTransactionRepository;
+    private final CardTransactionIndex cardTransactionIndex;
+
+    @Value("${oson.poller.enabled:true}")
+    private boolean enabled;
+
+    @Value("${oson.poller.interval-ms:5000}")
+    private long intervalMs;
+
+    @Value("${oson.poller.max-pages:5}")
+    private int maxPages;
+
+    @Value("${oson.match.window-minutes:15}")
+    private long windowMinutes;
+
+    private final Map<Long, Long> lastSeenIds = new ConcurrentHashMap<>();
+    private final Map<Long, Long> newestIds = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastPolledAt = new ConcurrentHashMap<>();
+    private final Map<Long, Object> cardLocks = new ConcurrentHashMap<>();
+    // Stored transfers not successful yet, by external id, guarded by the card lock
+    private final Map<Long, NavigableMap<Long, LocalDateTime>> unsettled = new ConcurrentHashMap<>();
+    private volatile long lastCompletedPollAt;
+
+    @PostConstruct
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<ProviderTransaction> recent = providerTransactionRepository
+                    .findByProviderAndTransactionTimeAfterAndMatchedRequestIdIsNull(PROVIDER, windowStart());
+            recent.removeIf(transaction -> !isSuccessful(transaction));
+            recent.forEach(cardTransactionIndex::add);
+            logger.info("Indexed {} recent unmatched Oson transactions", recent.size());
+        } catch (Exception e) {
+            logger.error("Failed to load recent Oson transactions: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${oson.poller.interval-ms:5000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        boolean allPolled = true;
+        for (AdminCard card : adminCardRepository.findByOsonConfigPrimaryConfigTrueAndPaymentSystem(PaymentSystem.UZCARD)) {
+            try {
+                pollCard(card);
+            } catch (Exception e) {
+                allPolled = false;
+                logger.error("Failed to poll Oson history for admin card {}: {}", card.getId(), e.getMessage());
+            }
+        }
+        cardTransactionIndex.evictOlderThan(windowStart());
+        if (allPolled) {
+            lastCompletedPollAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * True while the poller keeps up, so payment checks can rely on the local index.
+     */
+    public boolean isFresh() {
+        return enabled && System.currentTimeMillis() - lastCompletedPollAt < intervalMs * 3;
+    }
+
+    /**
+     * Looks the payment up in the local index and claims the matching transaction for the request.
+     * The card is polled once more first if its data is older than one poll interval.
+     * Returns the same shape as {@link OsonService#verifyPaymentByAmountAndCard}.
+     */
+    public Map<String, Object> verifyPayment(HizmatRequest request, AdminCard adminCard) {
+        return verifyPayment(request, adminCard, true);
+    }
+
+    /**
+     * Like {@link #verifyPayment(HizmatRequest, AdminCard)} but answers from the index only.
+     */
+    public Map<String, Object> claimPayment(HizmatRequest request, AdminCard adminCard) {
+        return verifyPayment(request, adminCard, false);
+    }
+
+    /**
+     * Releases the transactions claimed for the request and puts them back in the index, so a
+     * failed approval can be retried.
+     */
+    public void releaseClaim(Long requestId) {
+        LocalDateTime windowStart = windowStart();
+        for (ProviderTransaction transaction : providerTransactionRepository.findByMatchedRequestId(requestId)) {
+            if (providerTransactionRepository.unclaim(transaction.getId(), requestId) != 1) {
+                continue;
+            }
+            transaction.setMatchedRequestId(null);
+            if (transaction.getTransactionTime().isAfter(windowStart)) {
+                cardTransactionIndex.add(transaction);
+            }
+            logger.info("Released Oson transaction {} claimed for request {}", transaction.getExternalId(), requestId);
+        }
+    }
+
+    public boolean hasCandidate(HizmatRequest request) {
+        return cardTransactionIndex.find(request.getAdminCardId(), request.getUniqueAmount() * 100, matchStart(request)).isPresent();
+    }
+
+    private Map<String, Object> verifyPayment(HizmatRequest request, AdminCard adminCard, boolean pollOnMiss) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "ERROR");
+        Optional<ProviderTransaction> match = findAndClaim(request, adminCard.getId());
+        if (match.isEmpty() && pollOnMiss && System.currentTimeMillis() - lastPolledAt.getOrDefault(adminCard.getId(), 0L) > intervalMs) {
+            pollCard(adminCard);
+            match = findAndClaim(request, adminCard.getId());
+        }
+        if (match.isEmpty()) {
+            response.put("error", "No matching payment found");
+            return response;
+        }
+        ProviderTransaction transaction = match.get();
+        response.put("status", "SUCCESS");
+        response.put("transactionId", String.valueOf(transaction.getExternalId()));
+        response.put("billId", transaction.getRefnum());
+        response.put("payUrl", "");
+        return response;
+    }
+
+    private Optional<ProviderTransaction> findAndClaim(HizmatRequest request, Long adminCardId) {
+        long amount = request.getUniqueAmount() * 100; // Oson amounts are in tiyin
+        while (true) {
+            Optional<ProviderTransaction> candidate = cardTransactionIndex.find(adminCardId, amount, matchStart(request));
+            if (candidate.isEmpty()) {
+                return candidate;
+            }
+            ProviderTransaction transaction = candidate.get();
+            cardTransactionIndex.remove(transaction);
+            if (providerTransactionRepository.claim(transaction.getId(), request.getId()) == 1) {
+                transaction.setMatchedRequestId(request.getId());
+                return candidate;
+            }
+            // Claimed by someone else in the meantime, try the next one
+        }
+    }
+
+    private void pollCard(AdminCard card) {
+        Object lock = cardLocks.computeIfAbsent(card.getId(), id -> new Object());
+        synchronized (lock) {
+            NavigableMap<Long, LocalDateTime> cardUnsettled = unsettled.computeIfAbsent(card.getId(), id -> new TreeMap<>());
+            long lastSeenId = lastSeenIds.computeIfAbsent(card.getId(), id -> restorePosition(id, cardUnsettled));
+            // Without a known position only the latest page is taken, not the whole history
+            int pages = lastSeenId == 0L ? 1 : maxPages;
+            List<ProviderTransaction> fresh = new ArrayList<>();
+            for (int page = 0; page < pages; page++) {
+                List<Map<String, Object>> history = osonService.fetchCardHistory(card.getCardNumber(), PAGE_SIZE, page * PAGE_SIZE);
+                if (history == null) {
+                    logger.warn("Admin card {} is not linked in Oson", card.getId());
+                    break;
+                }
+                boolean reachedSeen = false;
+                for (Map<String, Object> item : history) {
+                    ProviderTransaction transaction = toTransaction(card, item);
+                    if (transaction == null) {
+                        continue;
+                    }
+                    if (transaction.getExternalId() <= lastSeenId) {
+                        reachedSeen = true;
+                    } else {
+                        fresh.add(transaction);
+                    }
+                }
+                if (reachedSeen || history.size() < PAGE_SIZE) {
+                    break;
+                }
+            }
+            long newestId = newestIds.getOrDefault(card.getId(), lastSeenId);
+            long storedUpTo = newestId;
+            int stored = 0;
+            LocalDateTime windowStart = windowStart();
+            for (ProviderTransaction transaction : fresh) {
+                newestId = Math.max(newestId, transaction.getExternalId());
+                if (cardUnsettled.containsKey(transaction.getExternalId())) {
+                    settle(transaction, cardUnsettled, windowStart);
+                    continue;
+                }
+                if (transaction.getExternalId() <= storedUpTo) {
+                    continue; // Re-read behind an unsettled transfer, already stored
+                }
+                try {
+                    providerTransactionRepository.save(transaction);
+                    stored++;
+                } catch (DataIntegrityViolationException e) {
+                    continue; // Already stored
+                }
+                if (!isSuccessful(transaction)) {
+                    cardUnsettled.put(transaction.getExternalId(), transaction.getTransactionTime());
+                } else if (transaction.getTransactionTime().isAfter(windowStart)) {
+                    cardTransactionIndex.add(transaction);
+                }
+            }
+            cardUnsettled.values().removeIf(time -> time.isBefore(windowStart));
+            newestIds.put(card.getId(), newestId);
+            // Unsettled transfers inside the match window are read again until they succeed or age out
+            lastSeenIds.put(card.getId(), cardUnsettled.isEmpty() ? newestId : Math.min(newestId, cardUnsettled.firstKey() - 1));
+            lastPolledAt.put(card.getId(), System.currentTimeMillis());
+            if (stored > 0) {
+                logger.info("Stored {} new Oson transactions for admin card {}", stored, card.getId());
+            }
+        }
+    }
+
+    private long restorePosition(Long adminCardId, NavigableMap<Long, LocalDateTime> cardUnsettled) {
+        long newestId = providerTransactionRepository.findTopByProviderAndAdminCardIdOrderByExternalIdDesc(PROVIDER, adminCardId)
+                .map(ProviderTransaction::getExternalId)
+                .orElse(0L);
+        newestIds.put(adminCardId, newestId);
+        for (ProviderTransaction transaction : providerTransactionRepository
+                .findByProviderAndAdminCardIdAndTransactionTimeAfter(PROVIDER, adminCardId, windowStart())) {
+            if (!isSuccessful(transaction)) {
+                cardUnsettled.put(transaction.getExternalId(), transaction.getTransactionTime());
+            }
+        }
+        return cardUnsettled.isEmpty() ? newestId : Math.min(newestId, cardUnsettled.firstKey() - 1);
+    }
+
+    private void settle(ProviderTransaction polled, NavigableMap<Long, LocalDateTime> cardUnsettled, LocalDateTime windowStart) {
+        if (!isSuccessful(polled)) {
+            return;
+        }
+        cardUnsettled.remove(polled.getExternalId());
+        providerTransactionRepository.findByProviderAndExternalId(PROVIDER, polled.getExternalId()).ifPresent(stored -> {
+            stored.setStatus(polled.getStatus());
+            stored.setRefnum(polled.getRefnum());
+            providerTransactionRepository.save(stored);
+            if (stored.getMatchedRequestId() == null && stored.getTransactionTime().isAfter(windowStart)) {
+                cardTransactionIndex.add(stored);
+            }
+            logger.info("Oson transaction {} of admin card {} succeeded after being stored", stored.getExternalId(), stored.getAdminCardId());
+        });
+    }
+
+    private static boolean isSuccessful(ProviderTransaction transaction) {
+        return transaction.getStatus() != null && transaction.getStatus() == 1;
+    }
+
+    private ProviderTransaction toTransaction(AdminCard card, Map<String, Object> item) {
+        try {
+            return ProviderTransaction.builder()
+                    .provider(PROVIDER)
+                    .externalId(Long.parseLong(String.valueOf(item.get("id"))))
+                    .adminCardId(card.getId())
+                    .amount(Long.parseLong(String.valueOf(item.get("amount"))))
+                    .status(Integer.parseInt(String.valueOf(item.get("status"))))
+                    .refnum(item.get("refnum") != null ? String.valueOf(item.get("refnum")) : null)
+                    .transactionTime(OffsetDateTime.parse((String) item.get("ts"), OsonService.OSON_TIMESTAMP_FORMATTER)
+                            .atZoneSameInstant(ZONE).toLocalDateTime())
+                    .createdAt(LocalDateTime.now(ZONE))
+                    .build();
+        } catch (NumberFormatException | DateTimeParseException | ClassCastException e) {
+            logger.warn("Skipping malformed Oson transaction {}: {}", item.get("id"), e.getMessage());
+            return null;
+        }
+    }
+
+    // A transfer made before the request existed belongs to someone else who had the same amount earlier
+    private LocalDateTime matchStart(HizmatRequest request) {
+        LocalDateTime windowStart = windowStart();
+        return request.getCreatedAt() != null && request.getCreatedAt().isAfter(windowStart) ? request.getCreatedAt() : windowStart;
+    }
+
+    private LocalDateTime windowStart() {
+        return LocalDateTime.now(ZONE).minusMinutes(windowMinutes);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.shade.service;
+
+/**
+ * Oson could not be reached: retries were exhausted or the circuit breaker is open.
+ */
+public class OsonUnavailableException extends RuntimeException {
+    public OsonUnavailableException(String message) {
+        super(message);
+    }
+
+    public OsonUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.shade.service;
+
+import com.example.shade.bot.UpdateDispatcher;
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.HizmatRequestRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pairs PENDING_PAYMENT top-ups with ingested card transactions and confirms them without waiting
+ * for the user to press the confirm button. Confirmation runs on the chat's update lane, so it never
+ * races a confirm tap of the same user.
+ */
+@Service
+@RequiredArgsConstructor
+public class PaymentAutoConfirmService {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentAutoConfirmService.class);
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private final HizmatRequestRepository requestRepository;
+    private final OsonTransactionPoller osonTransactionPoller;
+    private final TopUpService topUpService;
+    private final UpdateDispatcher updateDispatcher;
+
+    @Value("${oson.auto-confirm.enabled:true}")
+    private boolean enabled;
+
+    // Same lifetime as the unique amount reservation: afterwards the amount may belong to another request
+    @Value("${topup.unique-amount.ttl-minutes:60}")
+    private long pendingTtlMinutes;
+
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "${oson.auto-confirm.interval-ms:3000}")
+    public void matchPendingPayments() {
+        if (!enabled || !osonTransactionPoller.isFresh()) {
+            return;
+        }
+        LocalDateTime since = LocalDateTime.now(ZONE).minusMinutes(pendingTtlMinutes);
+        for (HizmatRequest request : requestRepository.findByStatusInAndCreatedAtAfter(List.of(RequestStatus.PENDING_PAYMENT), since)) {
+            if (request.getAdminCardId() == null || request.getUniqueAmount() == null
+                    || !osonTransactionPoller.hasCandidate(request) || !inFlight.add(request.getId())) {
+                continue;
+            }
+            Long requestId = request.getId();
+            updateDispatcher.dispatch(request.getChatId(), () -> {
+                try {
+                    topUpService.autoConfirmPayment(requestId);
+                } catch (Exception e) {
+                    logger.error("Auto-confirmation failed for request {}: {}", requestId, e.getMessage());
+                } finally {
+                    inFlight.remove(requestId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancels top-ups left awaiting payment past the reservation lifetime, so their amount can never
+     * be matched to a later transfer.
+     */
+    @Scheduled(fixedDelayString = "${topup.pending-expiry.interval-ms:60000}")
+    public void expireStalePayments() {
+        LocalDateTime before = LocalDateTime.now(ZONE).minusMinutes(pendingTtlMinutes);
+        for (HizmatRequest request : requestRepository.findByStatusAndCreatedAtBefore(RequestStatus.PENDING_PAYMENT, before)) {
+            Long requestId = request.getId();
+            updateDispatcher.dispatch(request.getChatId(), () -> {
+                try {
+                    topUpService.expirePendingPayment(requestId);
+                } catch (Exception e) {
+                    logger.error("Failed to expire pending payment {}: {}", requestId, e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.shade.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Attempt budget with jittered exponential backoff.
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Delay before the given retry (1 for the first retry).
+     */
+    public long backoffMillis(int retry) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(retry - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    public void sleepBeforeRetry(int retry) {
+        try {
+            Thread.sleep(backoffMillis(retry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.shade.service;
+
+import com.example.shade.model.FlowData;
+import com.example.shade.model.SessionState;
+import com.example.shade.model.UserSession;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence of {@link UserSessionService} sessions into the session_data table.
+ * Changed sessions are flushed in one batch on a short interval and loaded back on startup,
+ * so conversations survive restarts without a database write on every button press.
+ */
+@Service
+@RequiredArgsConstructor
+public class SessionPersistenceService {
+    private static final Logger logger = LoggerFactory.getLogger(SessionPersistenceService.class);
+
+    private static final String DELETE_SQL = "DELETE FROM session_data WHERE chat_id = ?";
+    private static final String INSERT_SQL = "INSERT INTO session_data (chat_id, \"key\", \"value\") VALUES (?, ?, ?)";
+    private static final String SELECT_SQL = "SELECT chat_id, \"key\", \"value\" FROM session_data";
+    private static final String TOUCH_SQL = "UPDATE session_data SET \"value\" = ? WHERE chat_id = ? AND \"key\" = 'touchedAt'";
+
+    private static final String KEY_TOUCHED_AT = "touchedAt";
+    private static final String KEY_STATE = "state";
+    private static final String KEY_NAVIGATION = "navigation";
+    private static final String KEY_MESSAGE_IDS = "messageIds";
+    private static final String KEY_PLATFORM = "platform";
+    private static final String KEY_PLATFORM_USER_ID = "platformUserId";
+    private static final String KEY_FULL_NAME = "fullName";
+    private static final String KEY_CARD_NUMBER = "cardNumber";
+    private static final String KEY_AMOUNT = "amount";
+    private static final String KEY_PAYMENT_ATTEMPTS = "paymentAttempts";
+    private static final String KEY_PAYMENT_MESSAGE_ID = "paymentMessageId";
+
+    private final UserSessionService sessionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${session.persistence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${session.store.idle-ttl-minutes:360}")
+    private long idleTtlMinutes;
+
+    @PostConstruct
+    public void loadSessions() {
+        if (!enabled) {
+            return;
+        }
+        Map<Long, Map<String, String>> rowsByChat = new HashMap<>();
+        try {
+            jdbcTemplate.query(SELECT_SQL, rs -> {
+                rowsByChat.computeIfAbsent(rs.getLong("chat_id"), id -> new HashMap<>())
+                        .put(rs.getString("key"), rs.getString("value"));
+            });
+        } catch (Exception e) {
+            logger.error("Failed to load persisted sessions: {}", e.getMessage());
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTtlMinutes);
+        int restored = 0;
+        List<Object[]> stale = new ArrayList<>();
+        // Oldest first, so the store's access order matches the restored access times
+        List<Map.Entry<Long, Map<String, String>>> entries = new ArrayList<>(rowsByChat.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> parseLong(entry.getValue().get(KEY_TOUCHED_AT))));
+        for (Map.Entry<Long, Map<String, String>> entry : entries) {
+            Map<String, String> rows = entry.getValue();
+            long touchedAt = parseLong(rows.get(KEY_TOUCHED_AT));
+            if (touchedAt < cutoff) {
+                stale.add(new Object[]{entry.getKey()});
+                continue;
+            }
+            try {
+                sessionService.restoreSession(toSession(entry.getKey(), rows), touchedAt);
+                restored++;
+            } catch (Exception e) {
+                logger.warn("Skipping persisted session for chatId {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        logger.info("Restored {} of {} persisted sessions", restored, rowsByChat.size());
+        if (!stale.isEmpty()) {
+            try {
+                jdbcTemplate.batchUpdate(DELETE_SQL, stale);
+                logger.info("Deleted {} expired persisted sessions", stale.size());
+            } catch (Exception e) {
+                logger.error("Failed to delete expired persisted sessions: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${session.persistence.flush-interval-ms:300}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        Set<Long> dirtyChats = sessionService.drainDirtyChats();
+        Map<Long, Long> accessTimes = sessionService.drainAccessTimes();
+        if (dirtyChats.isEmpty() && accessTimes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            List<Object[]> deletes = new ArrayList<>(dirtyChats.size());
+            List<Object[]> inserts = new ArrayList<>();
+            for (Long chatId : dirtyChats) {
+                deletes.add(new Object[]{chatId});
+                UserSession session = sessionService.peekSession(chatId);
+                if (session != null) {
+                    toRows(session, accessTimes.getOrDefault(chatId, now))
+                            .forEach((key, value) -> inserts.add(new Object[]{chatId, key, value}));
+                }
+            }
+            // Sessions only read since the last flush just get their access time moved
+            List<Object[]> touches = new ArrayList<>();
+            accessTimes.forEach((chatId, time) -> {
+                if (!dirtyChats.contains(chatId)) {
+                    touches.add(new Object[]{String.valueOf(time), chatId});
+                }
+            });
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!deletes.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE_SQL, deletes);
+                }
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+                }
+                if (!touches.isEmpty()) {
+                    jdbcTemplate.batchUpdate(TOUCH_SQL, touches);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Failed to flush {} sessions, will retry: {}", dirtyChats.size(), e.getMessage());
+            sessionService.markDirty(dirtyChats);
+            sessionService.markAccessed(accessTimes);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Map<String, String> toRows(UserSession session, long touchedAt) {
+        // The handler lane keeps changing the session, so it is read under the session's own lock
+        synchronized (session) {
+            return snapshotRows(session, touchedAt);
+        }
+    }
+
+    private Map<String, String> snapshotRows(UserSession session, long touchedAt) {
+        Map<String, String> rows = new HashMap<>();
+        rows.put(KEY_TOUCHED_AT, String.valueOf(touchedAt));
+        if (session.getState() != null) {
+            rows.put(KEY_STATE, session.getState().name());
+        }
+        List<SessionState> navigation = session.getNavigationList();
+        if (!navigation.isEmpty()) {
+            StringBuilder value = new StringBuilder();
+            for (SessionState state : navigation) {
+                if (value.length() > 0) {
+                    value.append(',');
+                }
+                value.append(state.name());
+            }
+            rows.put(KEY_NAVIGATION, value.toString());
+        }
+        List<Integer> messageIds = session.getMessageIdList();
+        if (!messageIds.isEmpty()) {
+            StringBuilder value = new StringBuilder();
+            for (Integer messageId : messageIds) {
+                if (value.length() > 0) {
+                    value.append(',');
+                }
+                value.append(messageId).append(':').append(session.getMessageSentAt(messageId));
+            }
+            rows.put(KEY_MESSAGE_IDS, value.toString());
+        }
+        FlowData flowData = session.getFlowData();
+        putIfPresent(rows, KEY_PLATFORM, flowData.getPlatform());
+        putIfPresent(rows, KEY_PLATFORM_USER_ID, flowData.getPlatformUserId());
+        putIfPresent(rows, KEY_FULL_NAME, flowData.getFullName());
+        putIfPresent(rows, KEY_CARD_NUMBER, flowData.getCardNumber());
+        if (flowData.getAmount() != 0) {
+            rows.put(KEY_AMOUNT, String.valueOf(flowData.getAmount()));
+        }
+        if (flowData.getPaymentAttempts() != 0) {
+            rows.put(KEY_PAYMENT_ATTEMPTS, String.valueOf(flowData.getPaymentAttempts()));
+        }
+        if (flowData.getPaymentMessageId() != 0) {
+            rows.put(KEY_PAYMENT_MESSAGE_ID, String.valueOf(flowData.getPaymentMessageId()));
+        }
+        return rows;
+    }
+
+    private UserSession toSession(Long chatId, Map<String, String> rows) {
+        UserSession session = new UserSession();
+        session.setChatId(chatId);
+        if (rows.containsKey(KEY_STATE)) {
+            session.setState(SessionState.valueOf(rows.get(KEY_STATE)));
+        }
+        if (rows.containsKey(KEY_NAVIGATION)) {
+            for (String state : rows.get(KEY_NAVIGATION).split(",")) {
+                session.pushNavigationState(SessionState.valueOf(state));
+            }
+        }
+        if (rows.containsKey(KEY_MESSAGE_IDS)) {
+            for (String entry : rows.get(KEY_MESSAGE_IDS).split(",")) {
+                int separator = entry.indexOf(':');
+                if (separator < 0) {
+                    session.addMessageId(Integer.parseInt(entry), 0L);
+                } else {
+                    session.addMessageId(Integer.parseInt(entry.substring(0, separator)), parseLong(entry.substring(separator + 1)));
+                }
+            }
+        }
+        FlowData flowData = session.getFlowData();
+        flowData.setPlatform(rows.get(KEY_PLATFORM));
+        flowData.setPlatformUserId(rows.get(KEY_PLATFORM_USER_ID));
+        flowData.setFullName(rows.get(KEY_FULL_NAME));
+        flowData.setCardNumber(rows.get(KEY_CARD_NUMBER));
+        flowData.setAmount(parseLong(rows.get(KEY_AMOUNT)));
+        flowData.setPaymentAttempts((int) parseLong(rows.get(KEY_PAYMENT_ATTEMPTS)));
+        flowData.setPaymentMessageId((int) parseLong(rows.get(KEY_PAYMENT_MESSAGE_ID)));
+        return session;
+    }
+
+    private void putIfPresent(Map<String, String> rows, String key, String value) {
+        if (value != null) {
+            rows.put(key, value);
+        }
+    }
+
+    private long parseLong(String value) {
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
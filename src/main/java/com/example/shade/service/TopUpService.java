@@ -1,32 +1,30 @@
 package com.example.shade.service;
 
 import com.example.shade.bot.MessageSender;
+import com.example.shade.bot.UpdateDispatcher;
 import com.example.shade.dto.BalanceLimit;
+import com.example.shade.dto.HumoTransaction;
 import com.example.shade.model.*;
 import com.example.shade.model.Currency;
 import com.example.shade.repository.*;
-import jakarta.xml.bind.DatatypeConverter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -42,37 +40,49 @@ public class TopUpService {
     private final BonusService bonusService;
     private final LotteryService lotteryService;
     private final OsonService osonService;
+    private final OsonTransactionPoller osonTransactionPoller;
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final CashdeskClient cashdeskClient;
+    private final CashdeskBalanceService cashdeskBalanceService;
     private static final long MIN_AMOUNT = 10_000;
     private static final long MAX_AMOUNT = 10_000_000;
-    private static final String PAYMENT_MESSAGE_KEY = "payment_message_id";
-    private static final String PAYMENT_ATTEMPTS_KEY = "payment_attempts";
     private final BlockedUserRepository blockedUserRepository;
     private final HumoService humoService;
     private final LanguageSessionService languageSessionService;
+    private final TaskScheduler taskScheduler;
+    private final UniqueAmountAllocator uniqueAmountAllocator;
+    private final AdminCardAllocator adminCardAllocator;
+    private final UpdateDispatcher updateDispatcher;
+
+    @Value("${humo.check.initial-delay-ms:2000}")
+    private long humoCheckInitialDelayMs;
+
+    @Value("${humo.check.max-checks:3}")
+    private int humoMaxChecks;
+
+    private final Set<Long> humoChecksInFlight = ConcurrentHashMap.newKeySet();
 
     public void startTopUp(Long chatId) {
         logger.info("Starting top-up for chatId: {}", chatId);
-        sessionService.setUserState(chatId, "TOPUP_PLATFORM_SELECTION");
-        sessionService.addNavigationState(chatId, "MAIN_MENU");
-        sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0");
+        sessionService.setUserState(chatId, SessionState.TOPUP_PLATFORM_SELECTION);
+        sessionService.addNavigationState(chatId, SessionState.MAIN_MENU);
+        sessionService.getFlowData(chatId).setPaymentAttempts(0);
         sendPlatformSelection(chatId);
     }
 
     public void handleTextInput(Long chatId, String text) {
-        String state = sessionService.getUserState(chatId);
+        SessionState state = sessionService.getUserState(chatId);
         logger.info("Text input for chatId {}, state: {}, text: {}", chatId, state, text);
         if (state == null) {
             sendMainMenu(chatId);
             return;
         }
         switch (state) {
-            case "TOPUP_USER_ID_INPUT" -> handleUserIdInput(chatId, text);
-            case "TOPUP_CARD_INPUT" -> handleCardInput(chatId, text);
-            case "TOPUP_AMOUNT_INPUT" -> handleAmountInput(chatId, text);
-            case "TOPUP_PAYMENT_CONFIRM" -> handlePaymentConfirmation(chatId, text);
+            case TOPUP_USER_ID_INPUT -> handleUserIdInput(chatId, text);
+            case TOPUP_CARD_INPUT -> handleCardInput(chatId, text);
+            case TOPUP_AMOUNT_INPUT -> handleAmountInput(chatId, text);
+            case TOPUP_PAYMENT_CONFIRM -> handlePaymentConfirmation(chatId, text);
             default -> backMenuMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.select_from_menu"));
         }
     }
@@ -98,49 +108,49 @@ public class TopUpService {
         sessionService.clearMessageIds(chatId);
 
         switch (callback) {
-            case "TOPUP_USE_SAVED_ID" -> validateUserId(chatId, sessionService.getUserData(chatId, "platformUserId"));
+            case "TOPUP_USE_SAVED_ID" -> validateUserId(chatId, sessionService.getFlowData(chatId).getPlatformUserId());
             case "TOPUP_APPROVE_USER" -> handleApproveUser(chatId);
             case "TOPUP_REJECT_USER" -> {
-                sessionService.setUserState(chatId, "TOPUP_USER_ID_INPUT");
-                sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+                sessionService.setUserState(chatId, SessionState.TOPUP_USER_ID_INPUT);
+                sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             }
             case "TOPUP_USE_SAVED_CARD" -> {
-                sessionService.setUserState(chatId, "TOPUP_AMOUNT_INPUT");
-                sessionService.addNavigationState(chatId, "TOPUP_CARD_INPUT");
+                sessionService.setUserState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
+                sessionService.addNavigationState(chatId, SessionState.TOPUP_CARD_INPUT);
                 sendAmountInput(chatId);
             }
             case "TOPUP_AMOUNT_10000" -> {
-                sessionService.setUserData(chatId, "amount", "10000");
-                sessionService.setUserState(chatId, "TOPUP_CONFIRMATION");
-                sessionService.addNavigationState(chatId, "TOPUP_AMOUNT_INPUT");
+                sessionService.getFlowData(chatId).setAmount(10_000L);
+                sessionService.setUserState(chatId, SessionState.TOPUP_CONFIRMATION);
+                sessionService.addNavigationState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
                 initiateTopUpRequest(chatId);
             }
             case "TOPUP_AMOUNT_10000000" -> {
-                sessionService.setUserData(chatId, "amount", "10000000");
-                sessionService.setUserState(chatId, "TOPUP_CONFIRMATION");
-                sessionService.addNavigationState(chatId, "TOPUP_AMOUNT_INPUT");
+                sessionService.getFlowData(chatId).setAmount(10_000_000L);
+                sessionService.setUserState(chatId, SessionState.TOPUP_CONFIRMATION);
+                sessionService.addNavigationState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
                 initiateTopUpRequest(chatId);
             }
             case "TOPUP_CONFIRM" -> initiateTopUpRequest(chatId);
             case "TOPUP_PAYMENT_CONFIRM" -> verifyPayment(chatId);
             case "TOPUP_SEND_SCREENSHOT" -> {
-                sessionService.setUserState(chatId, "TOPUP_AWAITING_SCREENSHOT");
+                sessionService.setUserState(chatId, SessionState.TOPUP_AWAITING_SCREENSHOT);
                 messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.send_screenshot"));
             }
             default -> {
                 if (callback.startsWith("TOPUP_PLATFORM:")) {
                     String platformName = callback.split(":")[1];
                     logger.info("Platform selected for chatId {}: {}", chatId, platformName);
-                    sessionService.setUserData(chatId, "platform", platformName);
-                    sessionService.setUserState(chatId, "TOPUP_USER_ID_INPUT");
-                    sessionService.addNavigationState(chatId, "TOPUP_PLATFORM_SELECTION");
+                    sessionService.getFlowData(chatId).setPlatform(platformName);
+                    sessionService.setUserState(chatId, SessionState.TOPUP_USER_ID_INPUT);
+                    sessionService.addNavigationState(chatId, SessionState.TOPUP_PLATFORM_SELECTION);
                     sendUserIdInput(chatId, platformName);
                 } else if (callback.startsWith("TOPUP_PAST_ID:")) {
                     validateUserId(chatId, callback.split(":")[1]);
                 } else if (callback.startsWith("TOPUP_PAST_CARD:")) {
-                    sessionService.setUserData(chatId, "cardNumber", callback.split(":")[1]);
-                    sessionService.setUserState(chatId, "TOPUP_AMOUNT_INPUT");
-                    sessionService.addNavigationState(chatId, "TOPUP_CARD_INPUT");
+                    sessionService.getFlowData(chatId).setCardNumber(callback.split(":")[1]);
+                    sessionService.setUserState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
+                    sessionService.addNavigationState(chatId, SessionState.TOPUP_CARD_INPUT);
                     sendAmountInput(chatId);
                 } else {
                     logger.warn("Unknown callback for chatId {}: {}", chatId, callback);
@@ -163,7 +173,7 @@ public class TopUpService {
     }
 
     public void handleBack(Long chatId) {
-        String lastState = sessionService.popNavigationState(chatId);
+        SessionState lastState = sessionService.popNavigationState(chatId);
         logger.info("Handling back for chatId {}, lastState: {}", chatId, lastState);
         if (lastState == null) {
             sendMainMenu(chatId);
@@ -171,29 +181,29 @@ public class TopUpService {
         }
 
         switch (lastState) {
-            case "MAIN_MENU" -> sendMainMenu(chatId);
-            case "TOPUP_PLATFORM_SELECTION" -> {
-                sessionService.setUserState(chatId, "TOPUP_PLATFORM_SELECTION");
+            case MAIN_MENU -> sendMainMenu(chatId);
+            case TOPUP_PLATFORM_SELECTION -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_PLATFORM_SELECTION);
                 sendPlatformSelection(chatId);
             }
-            case "TOPUP_USER_ID_INPUT", "TOPUP_APPROVE_USER" -> {
-                sessionService.setUserState(chatId, "TOPUP_USER_ID_INPUT");
-                sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            case TOPUP_USER_ID_INPUT, TOPUP_APPROVE_USER -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_USER_ID_INPUT);
+                sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             }
-            case "TOPUP_CARD_INPUT" -> {
-                sessionService.setUserState(chatId, "TOPUP_CARD_INPUT");
-                sendCardInput(chatId, sessionService.getUserData(chatId, "fullName"));
+            case TOPUP_CARD_INPUT -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_CARD_INPUT);
+                sendCardInput(chatId, sessionService.getFlowData(chatId).getFullName());
             }
-            case "TOPUP_AMOUNT_INPUT" -> {
-                sessionService.setUserState(chatId, "TOPUP_AMOUNT_INPUT");
+            case TOPUP_AMOUNT_INPUT -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
                 sendAmountInput(chatId);
             }
-            case "TOPUP_PAYMENT_CONFIRM" -> {
-                sessionService.setUserState(chatId, "TOPUP_PAYMENT_CONFIRM");
+            case TOPUP_PAYMENT_CONFIRM -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_PAYMENT_CONFIRM);
                 sendPaymentInstruction(chatId);
             }
-            case "TOPUP_AWAITING_SCREENSHOT" -> {
-                sessionService.setUserState(chatId, "TOPUP_PAYMENT_CONFIRM");
+            case TOPUP_AWAITING_SCREENSHOT -> {
+                sessionService.setUserState(chatId, SessionState.TOPUP_PAYMENT_CONFIRM);
                 sendPaymentInstruction(chatId);
             }
             default -> sendMainMenu(chatId);
@@ -213,7 +223,7 @@ public class TopUpService {
     }
 
     private void validateUserId(Long chatId, String userId) {
-        String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
+        String platformName = sessionService.getFlowData(chatId).getPlatform().replace("_", "");
         Platform platform = platformRepository.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
@@ -232,33 +242,15 @@ public class TopUpService {
             return;
         }
 
-        String confirmInput = userId + ":" + hash;
-        String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-        String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        logger.debug("Validating user ID {}: confirmInput={}, confirm={}, sha256Input1={}, sha256Result1={}, md5Input={}, md5Result={}, finalSignature={}",
-                userId, confirmInput, confirm, sha256Input1, sha256Result1, md5Input, md5Result, finalSignature);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                userId, confirm, cashdeskId);
-        logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+        logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-            UserProfile profile = response.getBody();
+            UserProfile profile = cashdeskClient.findUser(platform, userId);
 
-            if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && profile.getName() != null) {
+            if (profile != null && profile.getUserId() != null && profile.getName() != null) {
                 String fullName = profile.getName();
-                sessionService.setUserData(chatId, "platformUserId", userId);
-                sessionService.setUserData(chatId, "fullName", fullName);
+                sessionService.getFlowData(chatId).setPlatformUserId(userId);
+                sessionService.getFlowData(chatId).setFullName(fullName);
                 Currency currency = Currency.UZS;
                 if (profile.getCurrencyId() == 1L) {
                     currency = Currency.RUB;
@@ -276,7 +268,7 @@ public class TopUpService {
                         .build();
                 requestRepository.save(request);
 
-                sessionService.setUserState(chatId, "TOPUP_APPROVE_USER");
+                sessionService.setUserState(chatId, SessionState.TOPUP_APPROVE_USER);
                 sendUserApproval(chatId, fullName, userId);
             } else {
                 logger.warn("Invalid user profile for ID {} on platform {}. Response: {}", userId, platformName, profile);
@@ -300,14 +292,14 @@ public class TopUpService {
     }
 
     private void handleApproveUser(Long chatId) {
-        sessionService.setUserState(chatId, "TOPUP_CARD_INPUT");
-        sessionService.addNavigationState(chatId, "TOPUP_APPROVE_USER");
-        String fullName = sessionService.getUserData(chatId, "fullName");
+        sessionService.setUserState(chatId, SessionState.TOPUP_CARD_INPUT);
+        sessionService.addNavigationState(chatId, SessionState.TOPUP_APPROVE_USER);
+        String fullName = sessionService.getFlowData(chatId).getFullName();
         if (fullName == null) {
             logger.error("FullName is null for chatId {}", chatId);
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.user_data_not_found"));
-            sessionService.setUserState(chatId, "TOPUP_USER_ID_INPUT");
-            sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            sessionService.setUserState(chatId, SessionState.TOPUP_USER_ID_INPUT);
+            sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
         } else {
             sendCardInput(chatId, fullName);
         }
@@ -323,10 +315,10 @@ public class TopUpService {
             return;
         }
         String cardNumber = card.replaceAll("\\s+", "");
-        sessionService.setUserData(chatId, "cardNumber", cardNumber);
+        sessionService.getFlowData(chatId).setCardNumber(cardNumber);
 
-        String platform = sessionService.getUserData(chatId, "platform");
-        String userId = sessionService.getUserData(chatId, "platformUserId");
+        String platform = sessionService.getFlowData(chatId).getPlatform();
+        String userId = sessionService.getFlowData(chatId).getPlatformUserId();
         HizmatRequest request = requestRepository.findTopByChatIdAndPlatformAndPlatformUserIdOrderByCreatedAtDesc(
                 chatId, platform, userId).orElse(null);
         if (request != null) {
@@ -334,8 +326,8 @@ public class TopUpService {
             requestRepository.save(request);
         }
 
-        sessionService.setUserState(chatId, "TOPUP_AMOUNT_INPUT");
-        sessionService.addNavigationState(chatId, "TOPUP_CARD_INPUT");
+        sessionService.setUserState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
+        sessionService.addNavigationState(chatId, SessionState.TOPUP_CARD_INPUT);
         sendAmountInput(chatId);
     }
 
@@ -348,9 +340,9 @@ public class TopUpService {
                 sendMessageWithNavigation(chatId, languageSessionService.getTranslation(chatId, "topup.message.invalid_amount_range"));
                 return;
             }
-            sessionService.setUserData(chatId, "amount", String.valueOf(amount));
-            sessionService.setUserState(chatId, "TOPUP_CONFIRMATION");
-            sessionService.addNavigationState(chatId, "TOPUP_AMOUNT_INPUT");
+            sessionService.getFlowData(chatId).setAmount(amount);
+            sessionService.setUserState(chatId, SessionState.TOPUP_CONFIRMATION);
+            sessionService.addNavigationState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
             initiateTopUpRequest(chatId);
         } catch (NumberFormatException e) {
             logger.warn("Invalid amount format for chatId {}: {}", chatId, amountText);
@@ -363,45 +355,45 @@ public class TopUpService {
     }
 
     private void initiateTopUpRequest(Long chatId) {
-        if (sessionService.getUserData(chatId, "platformUserId") == null) {
+        if (sessionService.getFlowData(chatId).getPlatformUserId() == null) {
             logger.error("No validated user ID for chatId {}", chatId);
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.user_not_validated"));
-            sessionService.setUserState(chatId, "TOPUP_USER_ID_INPUT");
-            sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            sessionService.setUserState(chatId, SessionState.TOPUP_USER_ID_INPUT);
+            sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             return;
         }
 
-        String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
-
-        AdminCard adminCard = adminCardRepository.findLeastRecentlyUsed()
-                .orElseThrow(() -> new IllegalStateException("No admin cards available"));
-
-        long amount = Long.parseLong(sessionService.getUserData(chatId, "amount"));
-        long uniqueAmount = generateUniqueAmount(amount);
+        String platformName = sessionService.getFlowData(chatId).getPlatform().replace("_", "");
 
+        long amount = sessionService.getFlowData(chatId).getAmount();
+        if (amount <= 0) {
+            logger.warn("No amount in session for chatId {}", chatId);
+            sessionService.setUserState(chatId, SessionState.TOPUP_AMOUNT_INPUT);
+            sendAmountInput(chatId);
+            return;
+        }
         HizmatRequest request = requestRepository.findTopByChatIdAndPlatformAndPlatformUserIdOrderByCreatedAtDesc(
-                chatId, platformName, sessionService.getUserData(chatId, "platformUserId")).orElse(null);
+                chatId, platformName, sessionService.getFlowData(chatId).getPlatformUserId()).orElse(null);
         if (request == null) {
-            logger.error("No pending request found for chatId {}, platform: {}, userId: {}", chatId, platformName, sessionService.getUserData(chatId, "platformUserId"));
+            logger.error("No pending request found for chatId {}, platform: {}, userId: {}", chatId, platformName, sessionService.getFlowData(chatId).getPlatformUserId());
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.request_not_found"));
             sendMainMenu(chatId);
             return;
         }
 
+        AdminCard adminCard = adminCardAllocator.allocate(request.getId(), amount);
+        long uniqueAmount = uniqueAmountAllocator.allocate(adminCard.getId(), amount, request.getId());
         request.setAmount(amount);
         request.setUniqueAmount(uniqueAmount);
         request.setAdminCardId(adminCard.getId());
-        request.setCardNumber(sessionService.getUserData(chatId, "cardNumber"));
+        request.setCardNumber(sessionService.getFlowData(chatId).getCardNumber());
         request.setStatus(RequestStatus.PENDING_PAYMENT);
         request.setTransactionId(UUID.randomUUID().toString());
         request.setPaymentAttempts(0);
         requestRepository.save(request);
 
-        adminCard.setLastUsed(LocalDateTime.now(ZoneId.of("GMT+5")));
-        adminCardRepository.save(adminCard);
-
-        sessionService.setUserState(chatId, "TOPUP_PAYMENT_CONFIRM");
-        sessionService.addNavigationState(chatId, "TOPUP_CONFIRMATION");
+        sessionService.setUserState(chatId, SessionState.TOPUP_PAYMENT_CONFIRM);
+        sessionService.addNavigationState(chatId, SessionState.TOPUP_CONFIRMATION);
         sendPaymentInstruction(chatId);
     }
 
@@ -416,17 +408,20 @@ public class TopUpService {
             sendMainMenu(chatId);
             return;
         }
+        if (humoChecksInFlight.contains(request.getId())) {
+            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.payment_checking"));
+            return;
+        }
 
-        int attempts = Integer.parseInt(sessionService.getUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0"));
-        attempts++;
-        sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, String.valueOf(attempts));
+        FlowData flowData = sessionService.getFlowData(chatId);
+        int attempts = flowData.getPaymentAttempts() + 1;
+        flowData.setPaymentAttempts(attempts);
         request.setPaymentAttempts(attempts);
         requestRepository.save(request);
 
         AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
         Map<String, Object> statusResponse = null;
-        boolean response = false;
         ExchangeRate latest = exchangeRateRepository.findLatest()
                 .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
         long rubAmount =
@@ -435,19 +430,21 @@ public class TopUpService {
                         .longValue() / 1000;
         try {
             if (adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD)) {
-                statusResponse = osonService.verifyPaymentByAmountAndCard(
-                        chatId, request.getPlatform(), request.getPlatformUserId(),
-                        request.getAmount(), request.getCardNumber(), adminCard.getCardNumber(), request.getUniqueAmount());
+                // Ingested history answers locally; ask Oson directly only when the poller is behind
+                statusResponse = osonTransactionPoller.isFresh()
+                        ? osonTransactionPoller.verifyPayment(request, adminCard)
+                        : osonService.verifyPaymentByAmountAndCard(
+                                chatId, request.getPlatform(), request.getPlatformUserId(),
+                                request.getAmount(), request.getCardNumber(), adminCard.getCardNumber(), request.getUniqueAmount());
             } else {
-                try {
-                    Thread.sleep(2000); // 2-second delay
-                    response = humoService.verifyPaymentAmount(request.getUniqueAmount());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); // Restore interrupted status
-                    response = false; // Handle as needed
-                }
+                // Humo needs a moment to show the transfer; the checks run on the scheduler, not here
+                humoChecksInFlight.add(request.getId());
+                messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.payment_checking"));
+                scheduleHumoCheck(chatId, request.getId(), request.getUniqueAmount(), attempts, rubAmount, 0);
+                return;
             }
         } catch (Exception e) {
+            humoChecksInFlight.remove(request.getId());
             request.setStatus(RequestStatus.PENDING_SCREENSHOT);
             requestRepository.save(request);
             SendMessage message = new SendMessage();
@@ -461,7 +458,7 @@ public class TopUpService {
             message.setReplyMarkup(markup);
             messageSender.sendMessage(message, chatId);
 
-            sessionService.setUserState(chatId, "TOPUP_AWAITING_SCREENSHOT");
+            sessionService.setUserState(chatId, SessionState.TOPUP_AWAITING_SCREENSHOT);
 
             String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
             String logMessage = String.format(
@@ -487,116 +484,259 @@ public class TopUpService {
             adminLogBotService.sendLog("Osonda Xatolik Yuz berdi ⚠\uFE0F \n\n" + logMessage);
         }
 
-        boolean isPaymentReceived = response || (statusResponse != null ? "SUCCESS".equals(statusResponse.get("status")) : false);
+        boolean isPaymentReceived = statusResponse != null && "SUCCESS".equals(statusResponse.get("status"));
 
         if (isPaymentReceived) {
+            completePayment(chatId, request, adminCard, statusResponse, rubAmount);
+        } else {
+            handlePaymentNotReceived(chatId, request, attempts);
+        }
+    }
+
+    private void releaseReservations(HizmatRequest request, boolean paid) {
+        uniqueAmountAllocator.release(request.getId());
+        adminCardAllocator.release(request, paid);
+    }
+
+    private void scheduleHumoCheck(Long chatId, Long requestId, Long uniqueAmount, int attempts, long rubAmount, int check) {
+        long delayMs = humoCheckInitialDelayMs << check;
+        taskScheduler.schedule(() -> runHumoCheck(chatId, requestId, uniqueAmount, attempts, rubAmount, check),
+                Instant.now().plusMillis(delayMs));
+    }
+
+    private void runHumoCheck(Long chatId, Long requestId, Long uniqueAmount, int attempts, long rubAmount, int check) {
+        HumoTransaction taken = humoService.takePayment(uniqueAmount);
+        boolean received = taken != null || humoService.verifyPaymentAmount(uniqueAmount);
+        if (!received && check + 1 < humoMaxChecks) {
+            scheduleHumoCheck(chatId, requestId, uniqueAmount, attempts, rubAmount, check + 1);
+            return;
+        }
+        updateDispatcher.dispatch(chatId, () -> {
+            try {
+                finishHumoCheck(chatId, requestId, attempts, rubAmount, received);
+            } catch (Exception e) {
+                logger.error("Failed to finish Humo check for request {}: {}", requestId, e.getMessage());
+            } finally {
+                humoChecksInFlight.remove(requestId);
+                // A transfer that did not approve this request stays available to a later check
+                if (taken != null && !isApproved(requestId)) {
+                    humoService.returnPayment(taken);
+                }
+            }
+        });
+    }
+
+    private boolean isApproved(Long requestId) {
+        return requestRepository.findById(requestId)
+                .map(request -> request.getStatus() == RequestStatus.APPROVED)
+                .orElse(false);
+    }
+
+    private void finishHumoCheck(Long chatId, Long requestId, int attempts, long rubAmount, boolean received) {
+        HizmatRequest request = requestRepository.findById(requestId).orElse(null);
+        if (request == null || request.getStatus() != RequestStatus.PENDING_PAYMENT) {
+            return;
+        }
+        if (received) {
+            AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
+                    .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
+            completePayment(chatId, request, adminCard, null, rubAmount);
+        } else {
+            handlePaymentNotReceived(chatId, request, attempts);
+        }
+    }
+
+    private void handlePaymentNotReceived(Long chatId, HizmatRequest request, int attempts) {
+        logger.warn("Payment not received for chatId {}, uniqueAmount: {}, cardNumber: {}",
+                chatId, request.getUniqueAmount(), request.getCardNumber());
+
+        if (attempts >= 2) {
+            request.setStatus(RequestStatus.PENDING_SCREENSHOT);
+            requestRepository.save(request);
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText(languageSessionService.getTranslation(chatId, "topup.message.send_screenshot"));
+            InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+
+            List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+            rows.add(createNavigationButtons(chatId));
+            markup.setKeyboard(rows);
+            message.setReplyMarkup(markup);
+            messageSender.sendMessage(message, chatId);
+
+            sessionService.setUserState(chatId, SessionState.TOPUP_AWAITING_SCREENSHOT);
+        } else {
+            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.payment_not_received"));
+            sendPaymentInstruction(chatId);
+        }
+    }
+
+    /**
+     * Called from the pending payment matcher on the chat's update lane once an incoming transaction
+     * fits the request, so the user is credited without pressing confirm.
+     */
+    public void autoConfirmPayment(Long requestId) {
+        HizmatRequest request = requestRepository.findById(requestId).orElse(null);
+        if (request == null || request.getStatus() != RequestStatus.PENDING_PAYMENT) {
+            return;
+        }
+        AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId()).orElse(null);
+        if (adminCard == null || adminCard.getPaymentSystem() != PaymentSystem.UZCARD) {
+            return;
+        }
+        // Looked up before claiming, so a missing rate doesn't leave the transfer claimed
+        ExchangeRate latest = exchangeRateRepository.findLatest()
+                .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
+        long rubAmount =
+                BigDecimal.valueOf(request.getUniqueAmount())
+                        .multiply(latest.getUzsToRub())
+                        .longValue() / 1000;
+        Map<String, Object> statusResponse = osonTransactionPoller.claimPayment(request, adminCard);
+        if (!"SUCCESS".equals(statusResponse.get("status"))) {
+            return;
+        }
+        logger.info("Payment auto-confirmed for request {}, chatId {}", request.getId(), request.getChatId());
+        completePayment(request.getChatId(), request, adminCard, statusResponse, rubAmount);
+    }
+
+    /**
+     * Called from the pending payment matcher on the chat's update lane for a top-up that waited
+     * for payment longer than its amount stays reserved.
+     */
+    public void expirePendingPayment(Long requestId) {
+        HizmatRequest request = requestRepository.findById(requestId).orElse(null);
+        if (request == null || request.getStatus() != RequestStatus.PENDING_PAYMENT) {
+            return;
+        }
+        request.setStatus(RequestStatus.CANCELED);
+        requestRepository.save(request);
+        releaseReservations(request, false);
+        logger.info("Expired unpaid top-up request {}, chatId {}", request.getId(), request.getChatId());
+    }
+
+    private void completePayment(Long chatId, HizmatRequest request, AdminCard adminCard, Map<String, Object> statusResponse, long rubAmount) {
+        try {
             if (adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD)) {
                 request.setTransactionId((String) statusResponse.get("transactionId"));
-                request.setBillId(Long.parseLong(String.valueOf(statusResponse.get("billId"))));
+                request.setBillId(parseBillId(statusResponse.get("billId")));
                 request.setPayUrl((String) statusResponse.get("payUrl"));
             }
 
             request.setStatus(RequestStatus.APPROVED);
             requestRepository.save(request);
+        } catch (RuntimeException e) {
+            // The request stays pending, so the transfer it matched must stay available to it
+            request.setStatus(RequestStatus.PENDING_PAYMENT);
+            if (adminCard.getPaymentSystem().equals(PaymentSystem.UZCARD)) {
+                osonTransactionPoller.releaseClaim(request.getId());
+            }
+            throw e;
+        }
+        releaseReservations(request, true);
+
+        BalanceLimit transferSuccessful = transferToPlatform(request, adminCard);
+
+        if (transferSuccessful != null) {
+            UserBalance balance = userBalanceRepository.findById(chatId)
+                    .orElseGet(() -> {
+                        UserBalance newBalance = UserBalance.builder()
+                                .chatId(request.getChatId())
+                                .tickets(0L)
+                                .balance(BigDecimal.ZERO)
+                                .build();
+                        return userBalanceRepository.save(newBalance);
+                    });
+            long tickets = request.getAmount() / 30_000;
+            if (tickets > 0) {
+                lotteryService.awardTickets(chatId, tickets);
+            }
 
-            BalanceLimit transferSuccessful = transferToPlatform(request, adminCard);
-
-            if (transferSuccessful != null) {
-                UserBalance balance = userBalanceRepository.findById(chatId)
-                        .orElseGet(() -> {
-                            UserBalance newBalance = UserBalance.builder()
-                                    .chatId(request.getChatId())
-                                    .tickets(0L)
-                                    .balance(BigDecimal.ZERO)
-                                    .build();
-                            return userBalanceRepository.save(newBalance);
-                        });
-                long tickets = request.getAmount() / 30_000;
-                if (tickets > 0) {
-                    lotteryService.awardTickets(chatId, tickets);
-                }
+            bonusService.creditReferral(request.getChatId(), request.getAmount());
+            String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
+            String logMessage = String.format(
+                    "🆔: %d  To‘lov yakunlandi ✅\n" +
+                            "🌐 #%s: " + "%s\n" +
+                            "💸 Miqdor: %,d UZS\n" +
+                            "💸 Miqdor: %,d RUB\n" +
+                            "💳 Karta: `%s`\n" +
+                            "🔐 Admin kartasi: `%s`\n" +
+                            "🎟️ Chiptalar: %d\n\n" +
+                            "📅 [%s]",
+                    request.getId(),
+                    request.getPlatform(),
+                    request.getPlatformUserId(),
+                    request.getUniqueAmount(),
+                    rubAmount,
+                    request.getCardNumber(),
+                    adminCard.getCardNumber(),
+                    tickets,
+                    LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+            );
 
-                bonusService.creditReferral(request.getChatId(), request.getAmount());
-                String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
-                String logMessage = String.format(
-                        "🆔: %d  To‘lov yakunlandi ✅\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "🔐 Admin kartasi: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "📅 [%s]",
-                        request.getId(),
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
+            String logMessageAdmin = String.format(
+                    "🆔: %d  To‘lov yakunlandi ✅\n" +
+                            "👤: [%s] %s\n" +
+                            "🌐 #%s: " + "%s\n" +
+                            "💸 Miqdor: %,d UZS\n" +
+                            "💸 Miqdor: %,d RUB\n" +
+                            "💳 Karta: `%s`\n" +
+                            "\uD83D\uDCB3 Bizniki: `%s`\n" +
+                            "🎟️ Chiptalar: %d\n\n" +
+                            "\uD83C\uDFE6: %,d %s\n\n" +
+                            "📅 [%s]",
+                    request.getId(),
+                    chatId,
+                    number,
+                    request.getPlatform(),
+                    request.getPlatformUserId(),
+                    request.getUniqueAmount(),
+                    rubAmount,
+                    request.getCardNumber(),
+                    adminCard.getCardNumber(),
+                    tickets,
+                    transferSuccessful.getLimit().longValue(),
+                    request.getCurrency().toString(),
+                    LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+            );
+            adminLogBotService.sendLog(logMessageAdmin);
 
-                String logMessageAdmin = String.format(
-                        "🆔: %d  To‘lov yakunlandi ✅\n" +
-                                "👤: [%s] %s\n" +
-                                "🌐 #%s: " + "%s\n" +
-                                "💸 Miqdor: %,d UZS\n" +
-                                "💸 Miqdor: %,d RUB\n" +
-                                "💳 Karta: `%s`\n" +
-                                "\uD83D\uDCB3 Bizniki: `%s`\n" +
-                                "🎟️ Chiptalar: %d\n\n" +
-                                "\uD83C\uDFE6: %,d %s\n\n" +
-                                "📅 [%s]",
-                        request.getId(),
-                        chatId,
-                        number,
-                        request.getPlatform(),
-                        request.getPlatformUserId(),
-                        request.getUniqueAmount(),
-                        rubAmount,
-                        request.getCardNumber(),
-                        adminCard.getCardNumber(),
-                        tickets,
-                        transferSuccessful.getLimit().longValue(),
-                        request.getCurrency().toString(),
-                        LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                );
-                adminLogBotService.sendLog(logMessageAdmin);
-
-                messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "OPEN");
-                sessionService.clearMessageIds(chatId);
-                sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0");
-                messageSender.sendMessage(chatId, logMessage +
-                        (tickets > 0 ? String.format(languageSessionService.getTranslation(chatId, "topup.message.tickets_received"), tickets) : ""));
-                sendMainMenu(chatId);
-            } else {
-                handleTransferFailure(chatId, request, adminCard);
+            String successMessage = logMessage +
+                    (tickets > 0 ? String.format(languageSessionService.getTranslation(chatId, "topup.message.tickets_received"), tickets) : "");
+            // A background match must not tear down a flow the user has moved on to
+            if (!isOnPaymentScreen(chatId, request)) {
+                messageSender.sendMessage(chatId, successMessage);
+                return;
             }
+            messageSender.animateAndDeleteMessages(chatId, sessionService.getMessageIds(chatId), "OPEN");
+            sessionService.clearMessageIds(chatId);
+            sessionService.getFlowData(chatId).setPaymentAttempts(0);
+            messageSender.sendMessage(chatId, successMessage);
+            sendMainMenu(chatId);
         } else {
-            logger.warn("Payment not received for chatId {}, uniqueAmount: {}, cardNumber: {}",
-                    chatId, request.getUniqueAmount(), request.getCardNumber());
+            handleTransferFailure(chatId, request, adminCard);
+        }
+    }
 
-            if (attempts >= 2) {
-                request.setStatus(RequestStatus.PENDING_SCREENSHOT);
-                requestRepository.save(request);
-                SendMessage message = new SendMessage();
-                message.setChatId(chatId);
-                message.setText(languageSessionService.getTranslation(chatId, "topup.message.send_screenshot"));
-                InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-
-                List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-                rows.add(createNavigationButtons(chatId));
-                markup.setKeyboard(rows);
-                message.setReplyMarkup(markup);
-                messageSender.sendMessage(message, chatId);
-
-                sessionService.setUserState(chatId, "TOPUP_AWAITING_SCREENSHOT");
-            } else {
-                messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.payment_not_received"));
-                sendPaymentInstruction(chatId);
-            }
+    private boolean isOnPaymentScreen(Long chatId, HizmatRequest request) {
+        SessionState state = sessionService.getUserState(chatId);
+        if (state != SessionState.TOPUP_PAYMENT_CONFIRM && state != SessionState.TOPUP_AWAITING_SCREENSHOT) {
+            return false;
+        }
+        FlowData flowData = sessionService.getFlowData(chatId);
+        return flowData.getPlatform() != null
+                && flowData.getPlatform().replace("_", "").equals(request.getPlatform())
+                && Objects.equals(flowData.getPlatformUserId(), request.getPlatformUserId());
+    }
+
+    private static Long parseBillId(Object billId) {
+        if (billId == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(String.valueOf(billId).trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring non-numeric bill id {}", billId);
+            return null;
         }
     }
 
@@ -685,6 +825,7 @@ public class TopUpService {
         if (approve) {
             request.setStatus(RequestStatus.APPROVED);
             requestRepository.save(request);
+            releaseReservations(request, true);
 
             BalanceLimit transferSuccessful = transferToPlatform(request, adminCard);
             if (transferSuccessful != null) {
@@ -760,6 +901,7 @@ public class TopUpService {
         } else {
             request.setStatus(RequestStatus.CANCELED);
             requestRepository.save(request);
+            releaseReservations(request, false);
 
             String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
             String logMessage = String.format(
@@ -798,7 +940,7 @@ public class TopUpService {
         }
 
         sessionService.clearMessageIds(requestId);
-        sessionService.setUserData(requestId, PAYMENT_ATTEMPTS_KEY, "0");
+        sessionService.getFlowData(requestId).setPaymentAttempts(0);
         sendMainMenu(requestId);
     }
 
@@ -824,6 +966,7 @@ public class TopUpService {
         if (approve) {
             request.setStatus(RequestStatus.APPROVED);
             requestRepository.save(request);
+            releaseReservations(request, true);
 
             BalanceLimit transferSuccessful = transferToPlatform(request, adminCard);
             if (transferSuccessful != null) {
@@ -899,6 +1042,7 @@ public class TopUpService {
         } else {
             request.setStatus(RequestStatus.CANCELED);
             requestRepository.save(request);
+            releaseReservations(request, false);
 
             String number = blockedUserRepository.findByChatId(request.getChatId()).get().getPhoneNumber();
             String logMessage = String.format(
@@ -937,42 +1081,10 @@ public class TopUpService {
         }
 
         sessionService.clearMessageIds(requestId);
-        sessionService.setUserData(requestId, PAYMENT_ATTEMPTS_KEY, "0");
+        sessionService.getFlowData(requestId).setPaymentAttempts(0);
         sendMainMenu(requestId);
     }
 
-    public BalanceLimit getCashdeskBalance(String hash, String cashierPass, String cashdeskId) {
-        RestTemplate restTemplate = new RestTemplate();
-        String baseUrl = "https://partners.servcul.com/CashdeskBotAPI";
-        String dt = ZonedDateTime.now(ZoneOffset.UTC)
-                .format(DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm:ss"));
-
-        // Generate signature
-        String sha256Input = String.format("hash=%s&cashierpass=%s&dt=%s", hash, cashierPass, dt);
-        String sha256Result = sha256Hex(sha256Input);
-        String md5Input = String.format("dt=%s&cashierpass=%s&cashdeskid=%s", dt, cashierPass, cashdeskId);
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result + md5Result);
-
-        // Generate confirm
-        String confirm = DigestUtils.md5DigestAsHex((cashdeskId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-
-        // Build URL
-        String url = String.format("%s/Cashdesk/%s/Balance?confirm=%s&dt=%s", baseUrl, cashdeskId, confirm, dt);
-
-        // Set headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        // Make GET request and extract balance
-        Map<String, Object> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class).getBody();
-        Object balanceObj = response != null ? response.get("Balance") : null;
-        Object limitObj = response != null ? response.get("Limit") : null;
-
-        return balanceObj != null ? new BalanceLimit(new BigDecimal(balanceObj.toString()), new BigDecimal(limitObj.toString())) : null;
-    }
-
     private BalanceLimit transferToPlatform(HizmatRequest request, AdminCard adminCard) {
         String platformName = request.getPlatform();
         Platform platform = platformRepository.findByName(platformName)
@@ -1000,41 +1112,14 @@ public class TopUpService {
             return null;
         }
 
-        String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-        String sha256Input1 = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "summa=" + amount + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Add", userId);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("cashdeskId", Integer.parseInt(cashdeskId));
-        body.put("lng", lng);
-        body.put("summa", amount);
-        body.put("confirm", confirm);
-        body.put("cardNumber", adminCard.getCardNumber());
-
         try {
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
-
-            Object successObj = responseBody != null ? responseBody.get("success") : null;
-            if (successObj == null && responseBody != null) {
-                successObj = responseBody.get("Success");
-            }
+            Map<String, Object> responseBody = cashdeskClient.deposit(platform, userId, amount, lng, adminCard.getCardNumber());
 
-            if (response.getStatusCode().is2xxSuccessful() && Boolean.TRUE.equals(successObj)) {
+            if (CashdeskClient.isSuccess(responseBody)) {
                 logger.info("✅ Transfer successful for chatId {}, userId: {}, amount: {}, platform: {}",
                         request.getChatId(), userId, amount, platformName);
 
-                return getCashdeskBalance(hash, cashierPass, cashdeskId);
+                return cashdeskBalanceService.recordDeposit(platform, amount);
             }
 
             String errorMsg = responseBody != null && responseBody.get("Message") != null
@@ -1063,7 +1148,7 @@ public class TopUpService {
         AdminCard adminCard = adminCardRepository.findById(request.getAdminCardId())
                 .orElseThrow(() -> new IllegalStateException("Admin card not found: " + request.getAdminCardId()));
 
-        int attempts = Integer.parseInt(sessionService.getUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0"));
+        int attempts = sessionService.getFlowData(chatId).getPaymentAttempts();
         ExchangeRate latest = exchangeRateRepository.findLatest()
                 .orElseThrow(() -> new RuntimeException("No exchange rate found in the database"));
 
@@ -1096,22 +1181,15 @@ public class TopUpService {
         message.setText(messageText);
         message.enableMarkdown(true);
         message.setReplyMarkup(createPaymentConfirmKeyboard(attempts,chatId));
-        messageSender.sendMessage(message, chatId);
-
-        List<Integer> messageIds = sessionService.getMessageIds(chatId);
-        Integer messageId = messageIds.isEmpty() ? null : messageIds.get(messageIds.size() - 1);
-        if (messageId != null) {
-            sessionService.setUserData(chatId, PAYMENT_MESSAGE_KEY, String.valueOf(messageId));
-        } else {
-            logger.error("Failed to retrieve messageId for chatId {}", chatId);
-            messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.message_id_error"));
-        }
-    }
-
-    private long generateUniqueAmount(long baseAmount) {
-        Random random = new Random();
-        int randomDigits = random.nextInt(100);
-        return baseAmount + randomDigits;
+        messageSender.sendMessage(message, chatId).thenAccept(messageId -> {
+            if (messageId != null) {
+                // Completes on the sender thread; session changes belong on the chat's lane
+                updateDispatcher.dispatch(chatId, () -> sessionService.getFlowData(chatId).setPaymentMessageId(messageId));
+            } else {
+                logger.error("Failed to retrieve messageId for chatId {}", chatId);
+                messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "topup.message.message_id_error"));
+            }
+        });
     }
 
     private void sendPlatformSelection(Long chatId) {
@@ -1128,9 +1206,10 @@ public class TopUpService {
         message.setChatId(chatId);
         if (!recentRequests.isEmpty()) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
+            sessionService.getFlowData(chatId).setPlatformUserId(latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "topup.message.enter_user_id_with_history"));
             message.setReplyMarkup(createSavedIdKeyboard(recentRequests,chatId));
+            prefetchSavedIds(platform, recentRequests);
         } else {
             message.setText(String.format(languageSessionService.getTranslation(chatId, "topup.message.enter_user_id"), platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
@@ -1138,6 +1217,11 @@ public class TopUpService {
         messageSender.sendMessage(message, chatId);
     }
 
+    private void prefetchSavedIds(String platformName, List<HizmatRequest> recentRequests) {
+        platformRepository.findByName(platformName).ifPresent(platform -> cashdeskClient.prefetchUsers(platform,
+                recentRequests.stream().map(HizmatRequest::getPlatformUserId).distinct().toList()));
+    }
+
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
@@ -1156,7 +1240,7 @@ public class TopUpService {
         message.setChatId(chatId);
         if (!recentRequests.isEmpty() && recentRequests.get(0).getCardNumber() != null) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "cardNumber", latestRequest.getCardNumber());
+            sessionService.getFlowData(chatId).setCardNumber(latestRequest.getCardNumber());
             message.setText(languageSessionService.getTranslation(chatId, "topup.message.enter_card_with_history"));
             message.setReplyMarkup(createSavedCardKeyboard(recentRequests,chatId));
         } else {
@@ -1176,8 +1260,8 @@ public class TopUpService {
 
     private void sendMainMenu(Long chatId) {
         sessionService.clearSession(chatId);
-        sessionService.setUserState(chatId, "MAIN_MENU");
-        sessionService.setUserData(chatId, PAYMENT_ATTEMPTS_KEY, "0");
+        sessionService.setUserState(chatId, SessionState.MAIN_MENU);
+        sessionService.getFlowData(chatId).setPaymentAttempts(0);
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText(languageSessionService.getTranslation(chatId, "topup.message.welcome"));
@@ -1343,15 +1427,4 @@ public class TopUpService {
     private boolean isValidCard(String card) {
         return card.replaceAll("\\s+", "").matches("\\d{16}");
     }
-
-
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return DatatypeConverter.printHexBinary(hash).toLowerCase();
-        } catch (Exception e) {
-            throw new RuntimeException("SHA-256 calculation failed", e);
-        }
-    }
 }
\ No newline at end of file
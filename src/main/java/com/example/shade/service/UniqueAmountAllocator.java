@@ -0,0 +1,132 @@
+package com.example.shade.service;
+
+import com.example.shade.model.HizmatRequest;
+import com.example.shade.model.RequestStatus;
+import com.example.shade.repository.HizmatRequestRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out the amount a user transfers so that no two requests awaiting payment on the same admin
+ * card share it. The reservation lives until the request is approved or canceled, or until it
+ * expires. The request rows are the persisted backstop: reservations are rebuilt from them on
+ * startup and every pick is checked against them.
+ */
+@Service
+@RequiredArgsConstructor
+public class UniqueAmountAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(UniqueAmountAllocator.class);
+    private static final List<RequestStatus> AWAITING_PAYMENT = List.of(RequestStatus.PENDING_PAYMENT, RequestStatus.PENDING_SCREENSHOT);
+    private static final int SPREAD = 100; // the last two digits of the amount
+    private static final ZoneId ZONE = ZoneId.of("GMT+5");
+
+    private final HizmatRequestRepository requestRepository;
+
+    @Value("${topup.unique-amount.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final Map<Key, Reservation> reservations = new ConcurrentHashMap<>();
+    private final Map<Long, Key> keysByRequest = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void warmUp() {
+        try {
+            long now = System.currentTimeMillis();
+            int restored = 0;
+            for (HizmatRequest request : requestRepository.findByStatusInAndCreatedAtAfter(AWAITING_PAYMENT, since())) {
+                if (request.getAdminCardId() == null || request.getUniqueAmount() == null) {
+                    continue;
+                }
+                Key key = new Key(request.getAdminCardId(), request.getUniqueAmount());
+                if (reserve(key, request.getId(), now) != null) {
+                    keysByRequest.put(request.getId(), key);
+                    restored++;
+                }
+            }
+            logger.info("Restored {} unique amount reservations", restored);
+        } catch (Exception e) {
+            logger.error("Failed to restore unique amount reservations: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reserves {@code baseAmount} plus a two-digit offset on the admin card for the request and
+     * returns it. A previous reservation of the same request is released.
+     */
+    public long allocate(Long adminCardId, long baseAmount, Long requestId) {
+        release(requestId);
+        long now = System.currentTimeMillis();
+        int start = ThreadLocalRandom.current().nextInt(SPREAD);
+        for (int i = 0; i < SPREAD; i++) {
+            long amount = baseAmount + (start + i) % SPREAD;
+            Key key = new Key(adminCardId, amount);
+            Reservation reservation = reserve(key, requestId, now);
+            if (reservation == null) {
+                continue;
+            }
+            if (requestRepository.existsAwaitingPayment(adminCardId, amount, requestId, AWAITING_PAYMENT, since())) {
+                // Taken by a request this instance has no reservation for
+                reservations.remove(key, reservation);
+                continue;
+            }
+            keysByRequest.put(requestId, key);
+            return amount;
+        }
+        logger.warn("No free unique amount on admin card {} for {}, falling back to an unreserved one", adminCardId, baseAmount);
+        return baseAmount + start;
+    }
+
+    public void release(Long requestId) {
+        if (requestId == null) {
+            return;
+        }
+        Key key = keysByRequest.remove(requestId);
+        if (key != null) {
+            reservations.computeIfPresent(key, (k, reservation) -> reservation.requestId().equals(requestId) ? null : reservation);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        reservations.forEach((key, reservation) -> {
+            if (reservation.expiresAt() < now && reservations.remove(key, reservation)) {
+                keysByRequest.remove(reservation.requestId(), key);
+            }
+        });
+    }
+
+    public int size() {
+        return reservations.size();
+    }
+
+    private Reservation reserve(Key key, Long requestId, long now) {
+        Reservation reservation = new Reservation(requestId, now + TimeUnit.MINUTES.toMillis(ttlMinutes));
+        Reservation current = reservations.compute(key, (k, existing) ->
+                existing == null || existing.expiresAt() < now || existing.requestId().equals(requestId) ? reservation : existing);
+        return current == reservation ? reservation : null;
+    }
+
+    private LocalDateTime since() {
+        return LocalDateTime.now(ZONE).minusMinutes(ttlMinutes);
+    }
+
+    private record Key(Long adminCardId, long amount) {
+    }
+
+    private record Reservation(Long requestId, long expiresAt) {
+    }
+}
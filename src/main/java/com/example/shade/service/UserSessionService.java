@@ -1,96 +1,182 @@
 package com.example.shade.service;
 
+import com.example.shade.dto.StoreStats;
+import com.example.shade.model.FlowData;
+import com.example.shade.model.SessionState;
 import com.example.shade.model.UserSession;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class UserSessionService {
-    private final Map<Long, UserSession> sessionStore = new ConcurrentHashMap<>();
-    private final Map<Long, Map<String, String>> sessionDataStore = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(UserSessionService.class);
 
-    public void setUserState(Long chatId, String state) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        session.setState(state);
-        sessionStore.put(chatId, session);
-    }
+    @Value("${session.store.max-size:100000}")
+    private int maxSize;
 
-    public String getUserState(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId))
-                .map(UserSession::getState)
-                .orElse(null);
+    @Value("${session.store.idle-ttl-minutes:360}")
+    private long idleTtlMinutes;
+
+    private BoundedExpiringStore<Long, UserSession> sessionStore;
+    // Chats changed since the last write-behind flush, see SessionPersistenceService
+    private final Set<Long> dirtyChats = ConcurrentHashMap.newKeySet();
+    // Last access per chat since the last flush, persisted so restored sessions keep their idle time
+    private final Map<Long, Long> accessedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        sessionStore = new BoundedExpiringStore<>(maxSize, TimeUnit.MINUTES.toMillis(idleTtlMinutes));
+        sessionStore.setRemovalListener((chatId, session) -> dirtyChats.add(chatId));
     }
 
-    public void setUserData(Long chatId, String key, String value) {
-        Map<String, String> data = sessionDataStore.computeIfAbsent(chatId, k -> new HashMap<>());
-        data.put(key, value);
-        sessionDataStore.put(chatId, data);
+    private UserSession session(Long chatId) {
+        dirtyChats.add(chatId);
+        touch(chatId);
+        return sessionStore.computeIfAbsent(chatId, k -> {
+            UserSession session = new UserSession();
+            session.setChatId(chatId);
+            return session;
+        });
     }
-    public String getUserData(Long chatId, String key, String defaultValue) {
-        return Optional.ofNullable(sessionDataStore.get(chatId))
-                .map(data -> data.getOrDefault(key, defaultValue))
-                .orElse(defaultValue);
+
+    public void setUserState(Long chatId, SessionState state) {
+        session(chatId).setState(state);
     }
 
-    public String getUserData(Long chatId, String key) {
-        return Optional.ofNullable(sessionDataStore.get(chatId))
-                .map(data -> data.get(key))
+    public SessionState getUserState(Long chatId) {
+        return Optional.ofNullable(read(chatId))
+                .map(UserSession::getState)
                 .orElse(null);
     }
 
-    public void addNavigationState(Long chatId, String state) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        List<String> navigationStates = session.getNavigationStates();
-        navigationStates.add(state);
-        session.setNavigationStates(navigationStates);
-        sessionStore.put(chatId, session);
+    /**
+     * Returns the mutable flow data of the chat, creating the session if needed.
+     * The session is marked dirty since callers may change the returned object.
+     */
+    public FlowData getFlowData(Long chatId) {
+        return session(chatId).getFlowData();
     }
 
-    public String popNavigationState(Long chatId) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        List<String> navigationStates = session.getNavigationStates();
-        if (navigationStates.isEmpty()) {
-            return null;
-        }
-        String lastState = navigationStates.remove(navigationStates.size() - 1);
-        session.setNavigationStates(navigationStates);
-        sessionStore.put(chatId, session);
-        return lastState;
+    public void addNavigationState(Long chatId, SessionState state) {
+        session(chatId).pushNavigationState(state);
+    }
+
+    public SessionState popNavigationState(Long chatId) {
+        return session(chatId).popNavigationState();
     }
 
     public void clearSession(Long chatId) {
         sessionStore.remove(chatId);
-        sessionDataStore.remove(chatId);
+        dirtyChats.add(chatId);
     }
 
     public List<Integer> getMessageIds(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId))
-                .map(UserSession::getMessageIds)
+        return Optional.ofNullable(read(chatId))
+                .map(UserSession::getMessageIdList)
                 .orElse(new ArrayList<>());
     }
 
+    public Integer getLastMessageId(Long chatId) {
+        return Optional.ofNullable(read(chatId))
+                .map(UserSession::getLastMessageId)
+                .orElse(null);
+    }
+
+    public long getMessageSentAt(Long chatId, int messageId) {
+        UserSession session = sessionStore.peek(chatId);
+        return session != null ? session.getMessageSentAt(messageId) : 0L;
+    }
+
+    public void addMessageId(Long chatId, int messageId) {
+        session(chatId).addMessageId(messageId);
+    }
+
+    public void addMessageId(Long chatId, int messageId, long sentAt) {
+        session(chatId).addMessageId(messageId, sentAt);
+    }
+
     public void clearMessageIds(Long chatId) {
-        UserSession session = sessionStore.computeIfAbsent(chatId, k -> new UserSession());
-        session.setChatId(chatId);
-        session.setMessageIds(new ArrayList<>());
-        sessionStore.put(chatId, session);
+        session(chatId).clearMessageIds();
     }
 
     public Optional<UserSession> getUserSession(Long chatId) {
-        return Optional.ofNullable(sessionStore.get(chatId));
+        return Optional.ofNullable(read(chatId));
+    }
+
+    public UserSession peekSession(Long chatId) {
+        return sessionStore.peek(chatId);
+    }
+
+    /**
+     * Puts a session loaded from the database, keeping any session created since startup.
+     */
+    public void restoreSession(UserSession session, long lastAccess) {
+        sessionStore.putIfAbsent(session.getChatId(), session, lastAccess);
+    }
+
+    public Set<Long> drainDirtyChats() {
+        Set<Long> drained = new HashSet<>();
+        for (Long chatId : dirtyChats) {
+            if (dirtyChats.remove(chatId)) {
+                drained.add(chatId);
+            }
+        }
+        return drained;
+    }
+
+    public void markDirty(Set<Long> chatIds) {
+        dirtyChats.addAll(chatIds);
+    }
+
+    public Map<Long, Long> drainAccessTimes() {
+        Map<Long, Long> drained = new HashMap<>();
+        for (Long chatId : accessedAt.keySet()) {
+            Long time = accessedAt.remove(chatId);
+            if (time != null) {
+                drained.put(chatId, time);
+            }
+        }
+        return drained;
+    }
+
+    public void markAccessed(Map<Long, Long> accessTimes) {
+        accessTimes.forEach((chatId, time) -> accessedAt.merge(chatId, time, Math::max));
+    }
+
+    private UserSession read(Long chatId) {
+        UserSession session = sessionStore.get(chatId);
+        if (session != null) {
+            touch(chatId);
+        }
+        return session;
+    }
+
+    private void touch(Long chatId) {
+        accessedAt.put(chatId, System.currentTimeMillis());
+    }
+
+    public StoreStats getSessionStats() {
+        return sessionStore.stats();
     }
 
-    public void saveUserSession(UserSession session) {
-        if (session.getChatId() != null) {
-            sessionStore.put(session.getChatId(), session);
+    @Scheduled(fixedDelayString = "${session.store.sweep-interval-ms:60000}")
+    public void evictExpiredSessions() {
+        int expired = sessionStore.evictExpired();
+        if (expired > 0) {
+            logger.info("Evicted {} idle sessions, {} sessions left", expired, sessionStore.size());
         }
     }
-}
\ No newline at end of file
+}
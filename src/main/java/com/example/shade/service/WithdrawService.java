@@ -10,28 +10,20 @@ import com.example.shade.repository.PlatformRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
-
 @Service
 @RequiredArgsConstructor
 public class WithdrawService {
@@ -43,27 +35,28 @@ public class WithdrawService {
     private final MessageSender messageSender;
     private final AdminLogBotService adminLogBotService;
     private final LanguageSessionService languageSessionService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final CashdeskClient cashdeskClient;
+    private final CashdeskBalanceService cashdeskBalanceService;
     private final BlockedUserRepository blockedUserRepository;
 
     public void startWithdrawal(Long chatId) {
         logger.info("Starting withdrawal for chatId: {}", chatId);
-        sessionService.setUserState(chatId, "WITHDRAW_PLATFORM_SELECTION");
-        sessionService.addNavigationState(chatId, "MAIN_MENU");
+        sessionService.setUserState(chatId, SessionState.WITHDRAW_PLATFORM_SELECTION);
+        sessionService.addNavigationState(chatId, SessionState.MAIN_MENU);
         sendPlatformSelection(chatId);
     }
 
     public void handleTextInput(Long chatId, String text) {
-        String state = sessionService.getUserState(chatId);
+        SessionState state = sessionService.getUserState(chatId);
         logger.info("Text input for chatId {}, state: {}, text: {}", chatId, state, text);
         if (state == null) {
             sendMainMenu(chatId);
             return;
         }
         switch (state) {
-            case "WITHDRAW_USER_ID_INPUT" -> handleUserIdInput(chatId, text);
-            case "WITHDRAW_CARD_INPUT" -> handleCardInput(chatId, text);
-            case "WITHDRAW_CODE_INPUT" -> handleCodeInput(chatId, text);
+            case WITHDRAW_USER_ID_INPUT -> handleUserIdInput(chatId, text);
+            case WITHDRAW_CARD_INPUT -> handleCardInput(chatId, text);
+            case WITHDRAW_CODE_INPUT -> handleCodeInput(chatId, text);
             default -> backMenuMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.select_from_menu"));
         }
     }
@@ -89,32 +82,32 @@ public class WithdrawService {
         }
 
         switch (callback) {
-            case "WITHDRAW_USE_SAVED_ID" -> validateUserId(chatId, sessionService.getUserData(chatId, "platformUserId"));
+            case "WITHDRAW_USE_SAVED_ID" -> validateUserId(chatId, sessionService.getFlowData(chatId).getPlatformUserId());
             case "WITHDRAW_APPROVE_USER" -> handleApproveUser(chatId);
             case "WITHDRAW_REJECT_USER" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_USER_ID_INPUT");
-                sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_USER_ID_INPUT);
+                sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             }
             case "WITHDRAW_USE_SAVED_CARD" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_CODE_INPUT");
-                sessionService.addNavigationState(chatId, "WITHDRAW_CARD_INPUT");
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_CODE_INPUT);
+                sessionService.addNavigationState(chatId, SessionState.WITHDRAW_CARD_INPUT);
                 sendCodeInput(chatId);
             }
             default -> {
                 if (callback.startsWith("WITHDRAW_PLATFORM:")) {
                     String platformName = callback.split(":")[1];
                     logger.info("Platform selected for chatId {}: {}", chatId, platformName);
-                    sessionService.setUserData(chatId, "platform", platformName);
-                    sessionService.setUserState(chatId, "WITHDRAW_USER_ID_INPUT");
-                    sessionService.addNavigationState(chatId, "WITHDRAW_PLATFORM_SELECTION");
+                    sessionService.getFlowData(chatId).setPlatform(platformName);
+                    sessionService.setUserState(chatId, SessionState.WITHDRAW_USER_ID_INPUT);
+                    sessionService.addNavigationState(chatId, SessionState.WITHDRAW_PLATFORM_SELECTION);
                     sendUserIdInput(chatId, platformName);
                 } else if (callback.startsWith("WITHDRAW_PAST_ID:")) {
                     validateUserId(chatId, callback.split(":")[1]);
                 } else if (callback.startsWith("WITHDRAW_PAST_CARD:")) {
                     String cardNumber = callback.split(":")[1];
-                    sessionService.setUserData(chatId, "cardNumber", cardNumber);
-                    sessionService.setUserState(chatId, "WITHDRAW_CODE_INPUT");
-                    sessionService.addNavigationState(chatId, "WITHDRAW_CARD_INPUT");
+                    sessionService.getFlowData(chatId).setCardNumber(cardNumber);
+                    sessionService.setUserState(chatId, SessionState.WITHDRAW_CODE_INPUT);
+                    sessionService.addNavigationState(chatId, SessionState.WITHDRAW_CARD_INPUT);
                     sendCodeInput(chatId);
                     handleCardInput(chatId, cardNumber);
                 } else {
@@ -138,28 +131,28 @@ public class WithdrawService {
     }
 
     public void handleBack(Long chatId) {
-        String lastState = sessionService.popNavigationState(chatId);
+        SessionState lastState = sessionService.popNavigationState(chatId);
         logger.info("Handling back for chatId {}, lastState: {}", chatId, lastState);
         if (lastState == null) {
             sendMainMenu(chatId);
             return;
         }
         switch (lastState) {
-            case "MAIN_MENU" -> sendMainMenu(chatId);
-            case "WITHDRAW_PLATFORM_SELECTION" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_PLATFORM_SELECTION");
+            case MAIN_MENU -> sendMainMenu(chatId);
+            case WITHDRAW_PLATFORM_SELECTION -> {
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_PLATFORM_SELECTION);
                 sendPlatformSelection(chatId);
             }
-            case "WITHDRAW_USER_ID_INPUT", "WITHDRAW_APPROVE_USER" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_USER_ID_INPUT");
-                sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            case WITHDRAW_USER_ID_INPUT, WITHDRAW_APPROVE_USER -> {
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_USER_ID_INPUT);
+                sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
             }
-            case "WITHDRAW_CARD_INPUT" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_CARD_INPUT");
-                sendCardInput(chatId, sessionService.getUserData(chatId, "fullName"));
+            case WITHDRAW_CARD_INPUT -> {
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_CARD_INPUT);
+                sendCardInput(chatId, sessionService.getFlowData(chatId).getFullName());
             }
-            case "WITHDRAW_CODE_INPUT" -> {
-                sessionService.setUserState(chatId, "WITHDRAW_CODE_INPUT");
+            case WITHDRAW_CODE_INPUT -> {
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_CODE_INPUT);
                 sendCodeInput(chatId);
             }
             default -> sendMainMenu(chatId);
@@ -270,34 +263,9 @@ public class WithdrawService {
             return null;
         }
 
-        String confirm = DigestUtils.md5DigestAsHex((userId + ":" + hash).getBytes(StandardCharsets.UTF_8));
-        String sha256Input1 = "hash=" + hash + "&lng=" + lng + "&userid=" + userId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "code=" + code + "&cashierpass=" + cashierPass + "&cashdeskid=" + cashdeskId;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Deposit/%s/Payout", userId);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("sign", finalSignature);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("cashdeskId", Integer.parseInt(cashdeskId));
-        body.put("lng", lng);
-        body.put("code", code);
-        body.put("confirm", confirm);
-
         try {
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, Map.class);
-            Map<String, Object> responseBody = response.getBody();
+            Map<String, Object> responseBody = cashdeskClient.payout(platform, userId, code, lng);
 
-            Object successObj = responseBody != null ? responseBody.get("success") : null;
-            if (successObj == null && responseBody != null) {
-                successObj = responseBody.get("Success");
-            }
             HizmatRequest request = requestRepository.findById(requestId)
                     .orElse(null);
             String errorMsg = responseBody != null && responseBody.get("Message") != null
@@ -309,7 +277,7 @@ public class WithdrawService {
                     request.getId(), cardNumber, platform.getName(), userId, code, errorMsg,
                     LocalDateTime.now(ZoneId.of("GMT+5")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
             );
-            if (response.getStatusCode().is2xxSuccessful() && Boolean.TRUE.equals(successObj)) {
+            if (CashdeskClient.isSuccess(responseBody)) {
                 Object summaObj = responseBody.get("Summa");
                 BigDecimal summa = null;
                 if (summaObj != null) {
@@ -321,6 +289,9 @@ public class WithdrawService {
                 }
 
                 logger.info("✅ Payout successful for userId {} on platform {}, summa={}, requestId: {}", userId, platformName, summa, requestId);
+                if (summa != null) {
+                    cashdeskBalanceService.recordPayout(platform, summa);
+                }
                 return summa;
             } else {
                 logger.warn("❌ Payout failed for userId {} on platform {}, response: {}", userId, platformName, responseBody);
@@ -358,7 +329,7 @@ public class WithdrawService {
     }
 
     private void validateUserId(Long chatId, String userId) {
-        String platformName = sessionService.getUserData(chatId, "platform").replace("_", "");
+        String platformName = sessionService.getFlowData(chatId).getPlatform().replace("_", "");
         Platform platform = platformRepository.findByName(platformName)
                 .orElseThrow(() -> new IllegalStateException("Platform not found: " + platformName));
 
@@ -381,30 +352,15 @@ public class WithdrawService {
             return;
         }
 
-        String confirmInput = userId + ":" + hash;
-        String confirm = DigestUtils.md5DigestAsHex(confirmInput.getBytes(StandardCharsets.UTF_8));
-        String sha256Input1 = "hash=" + hash + "&userid=" + userId + "&cashdeskid=" + cashdeskId;
-        String sha256Result1 = sha256Hex(sha256Input1);
-        String md5Input = "userid=" + userId + "&cashierpass=" + cashierPass + "&hash=" + hash;
-        String md5Result = DigestUtils.md5DigestAsHex(md5Input.getBytes(StandardCharsets.UTF_8));
-        String finalSignature = sha256Hex(sha256Result1 + md5Result);
-
-        String apiUrl = String.format("https://partners.servcul.com/CashdeskBotAPI/Users/%s?confirm=%s&cashdeskId=%s",
-                userId, confirm, cashdeskId);
-        logger.info("Validating user ID {} for platform {} (chatId: {}), URL: {}", userId, platformName, chatId, apiUrl);
+        logger.info("Validating user ID {} for platform {} (chatId: {})", userId, platformName, chatId);
 
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("sign", finalSignature);
-            HttpEntity<String> entity = new HttpEntity<>(headers);
+            UserProfile profile = cashdeskClient.findUser(platform, userId);
 
-            ResponseEntity<UserProfile> response = restTemplate.exchange(apiUrl, HttpMethod.GET, entity, UserProfile.class);
-            UserProfile profile = response.getBody();
-
-            if (response.getStatusCode().is2xxSuccessful() && profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
+            if (profile != null && profile.getUserId() != null && !profile.getName().isEmpty()) {
                 String fullName = profile.getName();
-                sessionService.setUserData(chatId, "platformUserId", userId);
-                sessionService.setUserData(chatId, "fullName", fullName);
+                sessionService.getFlowData(chatId).setPlatformUserId(userId);
+                sessionService.getFlowData(chatId).setFullName(fullName);
                 Currency currency = Currency.UZS;
                 if (profile.getCurrencyId() == 1L) {
                     currency = Currency.RUB;
@@ -421,7 +377,7 @@ public class WithdrawService {
                         .build();
                 requestRepository.save(request);
 
-                sessionService.setUserState(chatId, "WITHDRAW_APPROVE_USER");
+                sessionService.setUserState(chatId, SessionState.WITHDRAW_APPROVE_USER);
                 sendUserApproval(chatId, fullName, userId);
             } else {
                 logger.warn("Invalid user profile for ID {} on platform {}. Response: {}", userId, platformName, profile);
@@ -440,14 +396,14 @@ public class WithdrawService {
     }
 
     private void handleApproveUser(Long chatId) {
-        sessionService.setUserState(chatId, "WITHDRAW_CARD_INPUT");
-        sessionService.addNavigationState(chatId, "WITHDRAW_APPROVE_USER");
-        String fullName = sessionService.getUserData(chatId, "fullName");
+        sessionService.setUserState(chatId, SessionState.WITHDRAW_CARD_INPUT);
+        sessionService.addNavigationState(chatId, SessionState.WITHDRAW_APPROVE_USER);
+        String fullName = sessionService.getFlowData(chatId).getFullName();
         if (fullName == null) {
             logger.error("FullName is null for chatId {}", chatId);
             messageSender.sendMessage(chatId, languageSessionService.getTranslation(chatId, "withdraw.message.user_data_not_found"));
-            sessionService.setUserState(chatId, "WITHDRAW_USER_ID_INPUT");
-            sendUserIdInput(chatId, sessionService.getUserData(chatId, "platform"));
+            sessionService.setUserState(chatId, SessionState.WITHDRAW_USER_ID_INPUT);
+            sendUserIdInput(chatId, sessionService.getFlowData(chatId).getPlatform());
         } else {
             sendCardInput(chatId, fullName);
         }
@@ -463,10 +419,10 @@ public class WithdrawService {
             return;
         }
         String cardNumber = card.replaceAll("\\s+", "");
-        sessionService.setUserData(chatId, "cardNumber", cardNumber);
+        sessionService.getFlowData(chatId).setCardNumber(cardNumber);
 
-        String platform = sessionService.getUserData(chatId, "platform");
-        String userId = sessionService.getUserData(chatId, "platformUserId");
+        String platform = sessionService.getFlowData(chatId).getPlatform();
+        String userId = sessionService.getFlowData(chatId).getPlatformUserId();
         HizmatRequest request = requestRepository.findTopByChatIdAndPlatformAndPlatformUserIdOrderByCreatedAtDesc(
                 chatId, platform, userId).orElse(null);
         if (request != null) {
@@ -474,8 +430,8 @@ public class WithdrawService {
             requestRepository.save(request);
         }
 
-        sessionService.setUserState(chatId, "WITHDRAW_CODE_INPUT");
-        sessionService.addNavigationState(chatId, "WITHDRAW_CARD_INPUT");
+        sessionService.setUserState(chatId, SessionState.WITHDRAW_CODE_INPUT);
+        sessionService.addNavigationState(chatId, SessionState.WITHDRAW_CARD_INPUT);
         sendCodeInput(chatId);
     }
 
@@ -489,9 +445,9 @@ public class WithdrawService {
             return;
         }
 
-        String platform = sessionService.getUserData(chatId, "platform");
-        String userId = sessionService.getUserData(chatId, "platformUserId");
-        String cardNumber = sessionService.getUserData(chatId, "cardNumber");
+        String platform = sessionService.getFlowData(chatId).getPlatform();
+        String userId = sessionService.getFlowData(chatId).getPlatformUserId();
+        String cardNumber = sessionService.getFlowData(chatId).getCardNumber();
         HizmatRequest request = requestRepository.findTopByChatIdAndPlatformAndPlatformUserIdOrderByCreatedAtDesc(
                 chatId, platform, userId).orElse(null);
         if (request == null) {
@@ -582,9 +538,10 @@ public class WithdrawService {
         message.setChatId(chatId.toString());
         if (!recentRequests.isEmpty()) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "platformUserId", latestRequest.getPlatformUserId());
+            sessionService.getFlowData(chatId).setPlatformUserId(latestRequest.getPlatformUserId());
             message.setText(languageSessionService.getTranslation(chatId, "withdraw.message.user_id_with_recent"));
             message.setReplyMarkup(createSavedIdKeyboard(chatId, recentRequests));
+            prefetchSavedIds(platform, recentRequests);
         } else {
             message.setText(String.format(languageSessionService.getTranslation(chatId, "withdraw.message.user_id_input"), platform));
             message.setReplyMarkup(createNavigationKeyboard(chatId));
@@ -592,6 +549,11 @@ public class WithdrawService {
         messageSender.sendMessage(message, chatId);
     }
 
+    private void prefetchSavedIds(String platformName, List<HizmatRequest> recentRequests) {
+        platformRepository.findByName(platformName).ifPresent(platform -> cashdeskClient.prefetchUsers(platform,
+                recentRequests.stream().map(HizmatRequest::getPlatformUserId).distinct().toList()));
+    }
+
     private void sendUserApproval(Long chatId, String fullName, String userId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
@@ -610,7 +572,7 @@ public class WithdrawService {
         message.setChatId(chatId.toString());
         if (!recentRequests.isEmpty() && recentRequests.get(0).getCardNumber() != null) {
             HizmatRequest latestRequest = recentRequests.get(0);
-            sessionService.setUserData(chatId, "cardNumber", latestRequest.getCardNumber());
+            sessionService.getFlowData(chatId).setCardNumber(latestRequest.getCardNumber());
             message.setText(languageSessionService.getTranslation(chatId, "withdraw.message.card_input_with_recent"));
             message.setReplyMarkup(createSavedCardKeyboard(chatId, recentRequests));
         } else {
@@ -630,7 +592,7 @@ public class WithdrawService {
 
     private void sendMainMenu(Long chatId) {
         sessionService.clearSession(chatId);
-        sessionService.setUserState(chatId, "MAIN_MENU");
+        sessionService.setUserState(chatId, SessionState.MAIN_MENU);
         SendMessage message = new SendMessage();
         message.setChatId(chatId.toString());
         message.setText(languageSessionService.getTranslation(chatId, "withdraw.message.main_menu_welcome"));
@@ -794,20 +756,4 @@ public class WithdrawService {
     private boolean isValidCode(String code) {
         return code.matches("[A-Za-z0-9]+");
     }
-
-    private String sha256Hex(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.example.shade.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the signer against the string concatenation the services used before it.
+ */
+class CashdeskSignerTest {
+    private static final String HASH = "3f2a9c1be07d4e55a1c86b2f90d3e7a4";
+    private static final String CASHIER_PASS = "p@ss-7781";
+    private static final String CASHDESK_ID = "12345";
+    private static final String USER_ID = "987654321";
+    private static final String LNG = "uz";
+
+    private final CashdeskSigner signer = new CashdeskSigner(HASH, CASHIER_PASS, CASHDESK_ID);
+
+    @Test
+    void confirm() {
+        assertEquals(md5Hex(USER_ID + ":" + HASH), signer.confirm(USER_ID));
+    }
+
+    @Test
+    void userSign() {
+        String expected = sha256Hex(sha256Hex("hash=" + HASH + "&userid=" + USER_ID + "&cashdeskid=" + CASHDESK_ID)
+                + md5Hex("userid=" + USER_ID + "&cashierpass=" + CASHIER_PASS + "&hash=" + HASH));
+        assertEquals(expected, signer.userSign(USER_ID));
+    }
+
+    @Test
+    void depositSign() {
+        long summa = 150000L;
+        String expected = sha256Hex(sha256Hex("hash=" + HASH + "&lng=" + LNG + "&userid=" + USER_ID)
+                + md5Hex("summa=" + summa + "&cashierpass=" + CASHIER_PASS + "&cashdeskid=" + CASHDESK_ID));
+        assertEquals(expected, signer.depositSign(USER_ID, LNG, summa));
+    }
+
+    @Test
+    void payoutSign() {
+        String code = "A1b2C3";
+        String expected = sha256Hex(sha256Hex("hash=" + HASH + "&lng=" + LNG + "&userid=" + USER_ID)
+                + md5Hex("code=" + code + "&cashierpass=" + CASHIER_PASS + "&cashdeskid=" + CASHDESK_ID));
+        assertEquals(expected, signer.payoutSign(USER_ID, LNG, code));
+    }
+
+    @Test
+    void balanceSign() {
+        String dt = "2025.01.01 00:00:00";
+        String expected = sha256Hex(sha256Hex(String.format("hash=%s&cashierpass=%s&dt=%s", HASH, CASHIER_PASS, dt))
+                + md5Hex(String.format("dt=%s&cashierpass=%s&cashdeskid=%s", dt, CASHIER_PASS, CASHDESK_ID)));
+        assertEquals(expected, signer.balanceSign(dt));
+        assertEquals(md5Hex(CASHDESK_ID + ":" + HASH), signer.balanceConfirm());
+    }
+
+    @Test
+    void repeatedCallsGiveTheSameSign() {
+        String first = signer.userSign(USER_ID);
+        signer.depositSign(USER_ID, LNG, 1L);
+        assertEquals(first, signer.userSign(USER_ID));
+    }
+
+    private static String md5Hex(String input) {
+        return DigestUtils.md5DigestAsHex(input.getBytes(StandardCharsets.UTF_8));
+    }
+}